@@ -0,0 +1,199 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package check;
+
+import mapreduce.OffHeapAggMap;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Microbenchmark of the in-mapper aggregation state: {@link OffHeapAggMap} against the heap map it replaces
+ * ({@code HashMap<String,long[]>}, one String per record as with a Text key):
+ * - merge throughput on random keys (best of the measured rounds, after warm-up rounds)
+ * - GC collections and pause time during the measured rounds
+ * - footprint of a fresh map holding every key: retained heap after a full GC and direct memory
+ * - Usage: check.OffHeapAggMapBench [keys=100000] [mergesPerRound=10000000] [rounds=5]; run with a fixed heap (e.g. -Xmx1g)
+ */
+public class OffHeapAggMapBench
+{
+    public static void main(String[] args)
+    {
+        int keys   = (args.length > 0) ? Integer.parseInt(args[0]) : 100_000;
+        int merges = (args.length > 1) ? Integer.parseInt(args[1]) : 10_000_000;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+        // Keys look like Job 1 keys; the record stream reuses one byte buffer, like Mapper1
+        byte[][] encoded = new byte[keys][];
+        for (int i = 0; i < keys; i++)
+            encoded[i] = ("region-" + (i % 97) + "\tmodel-" + i).getBytes(StandardCharsets.UTF_8);
+        int[] stream = new int[1 << 20];
+        Random rnd = new Random(42);
+        for (int i = 0; i < stream.length; i++)
+            stream[i] = rnd.nextInt(keys);
+
+        System.out.printf(Locale.US, "[bench] %d keys, %d merges per round, %d rounds (+2 warm-up)%n", keys, merges, rounds);
+        run("HashMap<String,long[]>", HeapAgg::new, encoded, stream, merges, rounds);
+        run("OffHeapAggMap", OffHeapAgg::new, encoded, stream, merges, rounds);
+    }
+
+    private static void run(String name, Supplier<Agg> factory, byte[][] encoded, int[] stream, int merges, int rounds)
+    {
+        Agg agg = factory.get();
+        byte[] rec = new byte[64];
+        for (int w = 0; w < 2; w++)
+            round(agg, encoded, stream, merges, rec);
+
+        long gcCount = gcCount(), gcMs = gcMillis();
+        double best = 0;
+        for (int r = 0; r < rounds; r++)
+        {
+            long t0 = System.nanoTime();
+            round(agg, encoded, stream, merges, rec);
+            best = Math.max(best, merges / ((System.nanoTime() - t0) / 1e9));
+        }
+        long gcs = gcCount() - gcCount, pauses = gcMillis() - gcMs;
+
+        agg = null;
+        long heap0 = usedHeap(), direct0 = directBytes();
+        Agg full = factory.get();
+        for (int i = 0; i < encoded.length; i++)
+            full.merge(encoded[i], encoded[i].length, 1, i, i, 0);
+        long heap = usedHeap() - heap0, direct = directBytes() - direct0;
+
+        System.out.printf(Locale.US, "[bench] %-22s %,12.0f merges/s  GC: %d collections, %d ms  footprint: heap %,d B, direct %,d B (%d keys, check %d)%n",
+                name, best, gcs, pauses, heap, direct, full.size(), full.checksum());
+    }
+
+    private static void round(Agg agg, byte[][] encoded, int[] stream, int merges, byte[] rec)
+    {
+        agg.clear();
+        for (int i = 0; i < merges; i++)
+        {
+            byte[] k = encoded[stream[i & (stream.length - 1)]];
+            System.arraycopy(k, 0, rec, 0, k.length);
+            agg.merge(rec, k.length, 1, i & 1023, 7, i & 1);
+        }
+    }
+
+    private interface Agg
+    {
+        void merge(byte[] k, int len, long a0, long a1, long a2, long a3);
+        void clear();
+        int size();
+        long checksum();
+    }
+
+    private static final class HeapAgg implements Agg
+    {
+        private final Map<String, long[]> map = new HashMap<>();
+
+        @Override
+        public void merge(byte[] k, int len, long a0, long a1, long a2, long a3)
+        {
+            long[] acc = map.computeIfAbsent(new String(k, 0, len, StandardCharsets.UTF_8), x -> new long[4]);
+            acc[0] += a0;
+            acc[1] += a1;
+            acc[2] += a2;
+            acc[3] += a3;
+        }
+
+        @Override
+        public void clear() { map.clear(); }
+
+        @Override
+        public int size() { return map.size(); }
+
+        @Override
+        public long checksum()
+        {
+            long c = 0;
+            for (long[] acc : map.values())
+                c += acc[0] + acc[1];
+            return c;
+        }
+    }
+
+    private static final class OffHeapAgg implements Agg
+    {
+        // Default sizing, grown on demand as in Mapper1
+        private final OffHeapAggMap map = new OffHeapAggMap();
+
+        @Override
+        public void merge(byte[] k, int len, long a0, long a1, long a2, long a3)
+        {
+            map.merge(k, 0, len, a0, a1, a2, a3);
+        }
+
+        @Override
+        public void clear() { map.clear(); }
+
+        @Override
+        public int size() { return map.size(); }
+
+        @Override
+        public long checksum()
+        {
+            final long[] c = {0};
+            try
+            {
+                map.forEach((k, len, a0, a1, a2, a3) -> c[0] += a0 + a1);
+            }
+            catch (Exception e)
+            {
+                throw new IllegalStateException(e);
+            }
+            return c[0];
+        }
+    }
+
+    private static long usedHeap()
+    {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long directBytes()
+    {
+        for (BufferPoolMXBean p : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+            if ("direct".equals(p.getName()))
+                return p.getMemoryUsed();
+        return 0;
+    }
+
+    private static long gcCount()
+    {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            n += gc.getCollectionCount();
+        return n;
+    }
+
+    private static long gcMillis()
+    {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            n += gc.getCollectionTime();
+        return n;
+    }
+}
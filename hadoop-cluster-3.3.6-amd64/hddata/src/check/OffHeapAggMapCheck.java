@@ -0,0 +1,89 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package check;
+
+import mapreduce.OffHeapAggMap;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Randomized check of {@link OffHeapAggMap} against a {@code HashMap<String,long[]>} reference:
+ * - Merges random multi-byte (UTF-8) keys into a map sized far too small, so the table and the arena grow many times
+ * - Clears both maps halfway through, then compares size, get (present and absent keys), set and forEach
+ * - Usage: check.OffHeapAggMapCheck [seed] [operations]; exits with an error on the first mismatch
+ */
+public class OffHeapAggMapCheck
+{
+    public static void main(String[] args) throws Exception
+    {
+        long seed = (args.length > 0) ? Long.parseLong(args[0]) : 42L;
+        int ops   = (args.length > 1) ? Integer.parseInt(args[1]) : 500_000;
+
+        Random rnd = new Random(seed);
+        OffHeapAggMap map = new OffHeapAggMap(4, 16);
+        Map<String, long[]> ref = new HashMap<>();
+
+        for (int i = 0; i < ops; i++)
+        {
+            String k = "R\u00e9gion-" + rnd.nextInt(20_000);
+            long v = rnd.nextInt(1_000_000);
+            long hi = rnd.nextInt(2);
+
+            map.merge(k, 1, v, v * 7, hi);
+            long[] acc = ref.computeIfAbsent(k, x -> new long[OffHeapAggMap.FIELDS]);
+            acc[0]++;
+            acc[1] += v;
+            acc[2] += v * 7;
+            acc[3] += hi;
+
+            if (i == ops / 2)
+            {
+                map.clear();
+                ref.clear();
+                check(map.size() == 0, "size after clear");
+            }
+        }
+
+        check(map.size() == ref.size(), "size " + map.size() + " != " + ref.size());
+        for (Map.Entry<String, long[]> e : ref.entrySet())
+            for (int f = 0; f < OffHeapAggMap.FIELDS; f++)
+                check(map.get(e.getKey(), f, -1L) == e.getValue()[f], "get(" + e.getKey() + ", " + f + ")");
+        check(map.get("absent", 0, -7L) == -7L, "default for an absent key");
+
+        final int[] seen = {0};
+        map.forEach((key, len, a0, a1, a2, a3) ->
+        {
+            String k = new String(key, 0, len, StandardCharsets.UTF_8);
+            long[] acc = ref.get(k);
+            check(acc != null && acc[0] == a0 && acc[1] == a1 && acc[2] == a2 && acc[3] == a3, "forEach(" + k + ")");
+            seen[0]++;
+        });
+        check(seen[0] == ref.size(), "forEach visited " + seen[0] + " keys");
+
+        map.set("R\u00e9gion-set", 2, Long.MAX_VALUE);
+        check(map.get("R\u00e9gion-set", 2, 0L) == Long.MAX_VALUE && map.get("R\u00e9gion-set", 0, -1L) == 0L, "set");
+
+        System.out.println("[check] OffHeapAggMap: " + ref.size() + " keys match HashMap after " + ops + " operations (seed " + seed + ")");
+    }
+
+    private static void check(boolean ok, String what)
+    {
+        if (!ok)
+            throw new IllegalStateException("OffHeapAggMap mismatch: " + what);
+    }
+}
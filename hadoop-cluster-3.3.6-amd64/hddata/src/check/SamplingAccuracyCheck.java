@@ -0,0 +1,193 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package check;
+
+import mapreduce.DriverBMWSales;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Accuracy check of the sampling mode, run through the job chain itself ({@link DriverBMWSales}):
+ * - One exact run, then one sampled run per seed, all in this JVM with LocalJobRunner on the local filesystem
+ *   ("mapreduce.framework.name=local", result cache off), so splitting, sampling, parsing, estimation and the
+ *   confidence rule are the production classes
+ * - Job 3 runs with a Top-K larger than any region, so out_3 lists every sampled model; each row is compared with
+ *   the exact out_1 volumes: interval coverage, Top-K overlap per region, relative error of the exact Top-K volumes
+ *   and how many of the first K ranks flagged "confident" hold the exact model
+ * - Usage: check.SamplingAccuracyCheck <csv> [fraction=0.25] [splitBytes=131072] [topK=10] [seeds=20] [z=1.96];
+ *   needs the Hadoop jars on the classpath and exits with an error when the coverage is more than 2 points
+ *   below the nominal level
+ */
+public class SamplingAccuracyCheck
+{
+    private static final int ALL = 1_000_000; // Top-K that lists every model of a region
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1)
+        {
+            System.err.println("Usage: SamplingAccuracyCheck <csv> [fraction=0.25] [splitBytes=131072] [topK=10] [seeds=20] [z=1.96]");
+            System.exit(1);
+        }
+
+        String csv = Paths.get(args[0]).toAbsolutePath().toString();
+        double fraction = (args.length > 1) ? Double.parseDouble(args[1]) : 0.25;
+        long splitBytes = (args.length > 2) ? Long.parseLong(args[2]) : 128 * 1024;
+        int topK  = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+        int seeds = (args.length > 4) ? Integer.parseInt(args[4]) : 20;
+        double z  = (args.length > 5) ? Double.parseDouble(args[5]) : 1.96;
+
+        Path work = Files.createTempDirectory("sampling-check");
+        System.out.printf(Locale.US, "[check] %s: f = %.3f, splits of %d bytes, %d seeds, z = %.2f, outputs in %s%n",
+                csv, fraction, splitBytes, seeds, z, work);
+
+        // Exact run: (region, model) -> volume
+        Path exactDir = run(work.resolve("exact"), csv, ALL);
+        Map<String, Map<String, Long>> exact = new TreeMap<>();
+        for (String line : lines(exactDir.resolve("o1")))
+        {
+            String[] kv = line.split("\\t");
+            exact.computeIfAbsent(kv[0], r -> new HashMap<>()).put(kv[1], Long.parseLong(kv[2].split("\\|")[1]));
+        }
+
+        long covered = 0, intervals = 0, overlap = 0, slots = 0, confident = 0, confidentRight = 0;
+        double relErr = 0;
+        long relErrN = 0;
+
+        for (int s = 0; s < seeds; s++)
+        {
+            Path dir = run(work.resolve("seed-" + s), csv, ALL,
+                    "-D", "sample.fraction=" + fraction,
+                    "-D", "sample.seed=" + (42L + s),
+                    "-D", "sample.confidence.z=" + z,
+                    "-D", "mapreduce.input.fileinputformat.split.maxsize=" + splitBytes);
+
+            // out_3 rows per region, already ranked: model, estimate, half-width, flag
+            Map<String, List<String[]>> ranked = new TreeMap<>();
+            for (String line : lines(dir.resolve("o3")))
+            {
+                String[] p = line.split("\\t");
+                ranked.computeIfAbsent(p[0], r -> new ArrayList<>()).add(new String[] { p[1], p[2], p[6], p[7] });
+            }
+
+            for (Map.Entry<String, Map<String, Long>> region : exact.entrySet())
+            {
+                Map<String, Long> truth = region.getValue();
+                List<String[]> rows = ranked.getOrDefault(region.getKey(), Collections.<String[]>emptyList());
+
+                for (String[] r : rows)
+                {
+                    intervals++;
+                    if (Math.abs(Double.parseDouble(r[1]) - truth.getOrDefault(r[0], 0L)) <= Double.parseDouble(r[2]))
+                        covered++;
+                }
+
+                List<String> exactRank = new ArrayList<>(truth.keySet());
+                exactRank.sort((a, b) -> truth.get(a).equals(truth.get(b)) ? a.compareTo(b) : Long.compare(truth.get(b), truth.get(a)));
+                int n = Math.min(topK, exactRank.size());
+                Set<String> exactTop = new HashSet<>(exactRank.subList(0, n));
+                Map<String, Double> estimates = new HashMap<>();
+                for (int i = 0; i < rows.size(); i++)
+                {
+                    String[] r = rows.get(i);
+                    estimates.put(r[0], Double.parseDouble(r[1]));
+                    if (i >= topK)
+                        continue;
+
+                    if (exactTop.contains(r[0]))
+                        overlap++;
+                    if ("confident".equals(r[3]))
+                    {
+                        confident++;
+                        if (exactRank.get(i).equals(r[0]))
+                            confidentRight++;
+                    }
+                }
+                slots += n;
+
+                for (String m : exactTop)
+                {
+                    relErr += Math.abs(estimates.getOrDefault(m, 0.0) - truth.get(m)) / truth.get(m);
+                    relErrN++;
+                }
+            }
+            System.out.printf(Locale.US, "[check] seed %d: coverage so far %.3f%n", 42L + s, (double) covered / Math.max(1, intervals));
+        }
+
+        double coverage = (intervals > 0) ? (double) covered / intervals : 0.0;
+        System.out.printf(Locale.US, "[check] interval coverage: %.3f (%d of %d intervals, nominal %.3f)%n",
+                coverage, covered, intervals, nominal(z));
+        System.out.printf(Locale.US, "[check] Top-%d overlap with the exact run: %.3f%n", topK, (slots > 0) ? (double) overlap / slots : 0.0);
+        System.out.printf(Locale.US, "[check] mean relative error of the exact Top-%d volumes: %.4f%n", topK, (relErrN > 0) ? relErr / relErrN : 0.0);
+        System.out.printf(Locale.US, "[check] confident ranks holding the exact model: %d of %d%n", confidentRight, confident);
+
+        if (intervals == 0 || coverage < nominal(z) - 0.02)
+        {
+            System.err.println("[check] FAILED: coverage too far below the nominal level");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the whole chain on the local runner (a failing job exits the JVM through the driver).
+     *
+     * @return directory holding o1, o2 and o3
+     */
+    private static Path run(Path dir, String csv, int topK, String... options) throws Exception
+    {
+        List<String> argv = new ArrayList<>(Arrays.asList(
+                "-D", "mapreduce.framework.name=local",
+                "-D", "fs.defaultFS=file:///",
+                "-D", "mapreduce.local.map.tasks.maximum=4",
+                "-D", "result.cache.enabled=false"));
+        argv.addAll(Arrays.asList(options));
+        argv.addAll(Arrays.asList(csv, dir.resolve("o1").toString(), dir.resolve("o2").toString(), dir.resolve("o3").toString(),
+                String.valueOf(topK)));
+
+        DriverBMWSales.main(argv.toArray(new String[0]));
+        return dir;
+    }
+
+    /**
+     * Lines of every part file of a job output directory.
+     */
+    private static List<String> lines(Path out) throws IOException
+    {
+        List<String> all = new ArrayList<>();
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(out, "part-*"))
+        {
+            for (Path p : parts)
+                all.addAll(Files.readAllLines(p, StandardCharsets.UTF_8));
+        }
+        return all;
+    }
+
+    /**
+     * Two-sided normal coverage of +-z (Abramowitz-Stegun erf approximation, enough for a threshold).
+     */
+    private static double nominal(double z)
+    {
+        double x = z / Math.sqrt(2.0);
+        double t = 1.0 / (1.0 + 0.3275911 * x);
+        double y = 1.0 - (((((1.061405429 * t - 1.453152027) * t) + 1.421413741) * t - 0.284496736) * t + 0.254829592) * t * Math.exp(-x * x);
+        return y;
+    }
+}
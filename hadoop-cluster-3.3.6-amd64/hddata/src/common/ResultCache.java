@@ -0,0 +1,322 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package common;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Content-addressed result cache for the job chain (MapReduce and Spark):
+ * - Fingerprints a job from its input files (path, length, modification time) and its parameters;
+ *   filesystem checksums are added while the inputs hold at most "result.cache.checksum.max.files" files
+ *   (default 1000, 0 disables them), since each one is a round trip to the datanodes
+ * - Input directories are listed like FileInputFormat: direct children only, unless
+ *   "mapreduce.input.fileinputformat.input.dir.recursive" is set
+ * - A job writes into a staging directory next to its output; {@link #commit} stores the fingerprint and the run time
+ *   in "_FINGERPRINT" (hidden from FileInputFormat and from the "part-" filters of the downstream jobs) and swaps
+ *   the staging directory in, so a failed run leaves the previous output in place
+ * - A job whose output holds a matching fingerprint is skipped
+ * - Enabled by default, disable with "result.cache.enabled=false" (jobs then write their output directly)
+ */
+public class ResultCache
+{
+    public static final String ENABLED = "result.cache.enabled";
+    public static final String CHECKSUM_MAX_FILES = "result.cache.checksum.max.files";
+    public static final String MARKER = "_FINGERPRINT";
+    private static final String INPUT_DIR_RECURSIVE = "mapreduce.input.fileinputformat.input.dir.recursive";
+
+    private final Configuration conf;
+    private final boolean enabled;
+    private int hits, misses;
+    private long savedMs;
+
+    public ResultCache(Configuration conf)
+    {
+        this.conf = conf;
+        this.enabled = conf.getBoolean(ENABLED, true);
+    }
+
+    /**
+     * Computes the fingerprint of a job.
+     *
+     * @param job       job name, part of the fingerprint
+     * @param params    configuration values the job output depends on
+     * @param inputs    input files, directories or glob patterns (hidden files are ignored)
+     * @return SHA-256 hex digest
+     * @throws FileNotFoundException if an input matches no file
+     * @throws IOException if an input cannot be listed
+     */
+    public String fingerprint(String job, Map<String,String> params, Path... inputs) throws IOException
+    {
+        MessageDigest md;
+        try
+        {
+            md = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IOException(e);
+        }
+
+        update(md, "job=" + job);
+        for (Map.Entry<String,String> e : new TreeMap<>(params).entrySet())
+            update(md, e.getKey() + "=" + e.getValue());
+
+        boolean recursive = conf.getBoolean(INPUT_DIR_RECURSIVE, false);
+        List<FileStatus> files = new ArrayList<>();
+        for (Path in : inputs)
+        {
+            FileSystem fs = in.getFileSystem(conf);
+            FileStatus[] matches = fs.globStatus(in);
+            if (matches == null || matches.length == 0)
+                throw new FileNotFoundException("Input path does not match any file: " + in);
+
+            List<FileStatus> found = new ArrayList<>();
+            for (FileStatus m : matches)
+            {
+                if (isHidden(m.getPath()))
+                    continue;
+
+                if (m.isDirectory())
+                    list(fs, m.getPath(), recursive, found);
+                else
+                    found.add(m);
+            }
+            found.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+            files.addAll(found);
+        }
+
+        int maxChecksums = conf.getInt(CHECKSUM_MAX_FILES, 1000);
+        boolean checksums = files.size() <= maxChecksums;
+        if (!checksums && maxChecksums > 0)
+            System.out.println("[cache] " + files.size() + " input files (> " + CHECKSUM_MAX_FILES + "=" + maxChecksums
+                    + "): fingerprinting by length and modification time only");
+        update(md, "checksums=" + checksums);
+
+        for (FileStatus st : files)
+        {
+            update(md, st.getPath().toUri().getPath() + "|" + st.getLen() + "|" + st.getModificationTime());
+            if (!checksums)
+                continue;
+
+            // Not every filesystem provides checksums (e.g. the local one returns null)
+            FileChecksum ck = st.getPath().getFileSystem(conf).getFileChecksum(st.getPath());
+            if (ck != null)
+            {
+                update(md, ck.getAlgorithmName());
+                md.update(ck.getBytes());
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : md.digest())
+            hex.append(String.format("%02x", b));
+
+        return hex.toString();
+    }
+
+    /**
+     * Splits a comma-separated input list the way FileInputFormat and Spark textFile do
+     * (commas inside a glob group such as "{a,b}" do not split).
+     *
+     * @param commaSeparated    one or more input paths or glob patterns
+     * @return the input paths
+     */
+    public static Path[] inputPaths(String commaSeparated)
+    {
+        List<Path> paths = new ArrayList<>();
+        int depth = 0, from = 0;
+        for (int i = 0; i <= commaSeparated.length(); i++)
+        {
+            char c = (i < commaSeparated.length()) ? commaSeparated.charAt(i) : ',';
+            if (c == '{')
+                depth++;
+            else if (c == '}' && depth > 0)
+                depth--;
+            else if (c == ',' && depth == 0)
+            {
+                String p = commaSeparated.substring(from, i).trim();
+                if (!p.isEmpty())
+                    paths.add(new Path(p));
+                from = i + 1;
+            }
+        }
+
+        return paths.toArray(new Path[0]);
+    }
+
+    /**
+     * Adds the visible files of a directory, descending into subdirectories only if {@code recursive}
+     * (FileInputFormat does not read them otherwise).
+     */
+    private static void list(FileSystem fs, Path dir, boolean recursive, List<FileStatus> out) throws IOException
+    {
+        for (FileStatus st : fs.listStatus(dir))
+        {
+            if (isHidden(st.getPath()))
+                continue;
+
+            if (!st.isDirectory())
+                out.add(st);
+            else if (recursive)
+                list(fs, st.getPath(), true, out);
+        }
+    }
+
+    private static boolean isHidden(Path p)
+    {
+        String name = p.getName();
+        return name.startsWith("_") || name.startsWith(".");
+    }
+
+    /**
+     * Checks whether {@code out} already holds the result for {@code fp} and logs the outcome.
+     * On a miss the existing output is kept until {@link #commit} replaces it.
+     *
+     * @param job   job name for the log
+     * @param out   job output directory
+     * @param fp    fingerprint of the job
+     * @return true if the job can be skipped
+     * @throws FileAlreadyExistsException if {@code out} exists but was not written through the cache
+     * @throws IOException if the output cannot be inspected
+     */
+    public boolean isCached(String job, Path out, String fp) throws IOException
+    {
+        if (!enabled)
+            return false;
+
+        FileSystem fs = out.getFileSystem(conf);
+        Path marker = new Path(out, MARKER);
+        if (fs.exists(marker))
+        {
+            String storedFp = null;
+            long storedMs = 0;
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(marker), StandardCharsets.UTF_8)))
+            {
+                storedFp = br.readLine();
+                String ms = br.readLine();
+                if (ms != null)
+                    storedMs = Long.parseLong(ms.trim());
+            }
+            catch (NumberFormatException e) {} // Old or malformed marker: no saved time to report
+
+            if (fp.equals(storedFp))
+            {
+                hits++;
+                savedMs += storedMs;
+                System.out.println("[cache] " + job + ": HIT " + out + " (saved ~" + storedMs + " ms)");
+                return true;
+            }
+
+            System.out.println("[cache] " + job + ": MISS " + out + " (inputs or parameters changed), recomputing");
+        }
+        else
+        {
+            checkOutputs(out);
+            System.out.println("[cache] " + job + ": MISS " + out);
+        }
+
+        misses++;
+        return false;
+    }
+
+    /**
+     * Fails if an output directory exists but was not written through the cache (it would be replaced on commit);
+     * drivers call it for all their outputs before the first job runs.
+     *
+     * @param outs  job output directories
+     * @throws FileAlreadyExistsException if one of them exists without a fingerprint
+     * @throws IOException if an output cannot be inspected
+     */
+    public void checkOutputs(Path... outs) throws IOException
+    {
+        if (!enabled)
+            return;
+
+        for (Path out : outs)
+        {
+            FileSystem fs = out.getFileSystem(conf);
+            if (fs.exists(out) && !fs.exists(new Path(out, MARKER)))
+                throw new FileAlreadyExistsException("Output directory " + out + " already exists and has no " + MARKER
+                        + "; remove it or choose another output path");
+        }
+    }
+
+    /**
+     * Returns the directory a job should write to: an empty staging directory next to {@code out},
+     * or {@code out} itself when the cache is disabled.
+     *
+     * @param out   job output directory
+     * @return path to pass to the output format
+     * @throws IOException if a leftover staging directory cannot be removed
+     */
+    public Path staging(Path out) throws IOException
+    {
+        if (!enabled)
+            return out;
+
+        Path staged = out.suffix(".staging");
+        staged.getFileSystem(conf).delete(staged, true); // left over by a failed run
+        return staged;
+    }
+
+    /**
+     * Records the fingerprint of a successful run and moves its staging directory to {@code out},
+     * replacing the previous output. Does nothing when the cache is disabled.
+     *
+     * @param staged    directory returned by {@link #staging(Path)}, holding the job output
+     * @param out       job output directory
+     * @param fp        fingerprint of the job
+     * @param elapsedMs run time of the job, reported as time saved on later hits
+     * @throws IOException if the marker cannot be written or the staging directory cannot be moved
+     */
+    public void commit(Path staged, Path out, String fp, long elapsedMs) throws IOException
+    {
+        if (!enabled)
+            return;
+
+        FileSystem fs = out.getFileSystem(conf);
+        try (Writer w = new OutputStreamWriter(fs.create(new Path(staged, MARKER), true), StandardCharsets.UTF_8))
+        {
+            w.write(fp + "\n" + elapsedMs + "\n");
+        }
+
+        if (fs.exists(out) && !fs.delete(out, true))
+            throw new IOException("Cannot remove the previous output " + out);
+        if (!fs.rename(staged, out))
+            throw new IOException("Cannot move " + staged + " to " + out);
+    }
+
+    /**
+     * Logs hits, misses and total time saved.
+     */
+    public void logSummary()
+    {
+        if (enabled)
+            System.out.println("[cache] " + hits + " hit(s), " + misses + " miss(es), ~" + savedMs + " ms saved");
+    }
+
+    private static void update(MessageDigest md, String s)
+    {
+        md.update(s.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) '\n');
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package common;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.CombineTextInputFormat;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Input format of the sampling mode for many small files ("input.combine.enabled", or Spark's input coalescing):
+ * packs small files like CombineTextInputFormat, one pool per folder so that a combined split never mixes strata,
+ * then draws the sample of combined splits (see {@link SampledTextInputFormat})
+ */
+public class SampledCombineTextInputFormat extends CombineTextInputFormat
+{
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException
+    {
+        // CombineFileInputFormat hands the pool filters scheme-less paths
+        Set<String> folders = new TreeSet<>();
+        for (FileStatus st : listStatus(job))
+            folders.add(st.getPath().getParent().toUri().getPath());
+        for (String folder : folders)
+            createPool(Collections.<PathFilter>singletonList(p -> p.getParent() != null && folder.equals(p.getParent().toUri().getPath())));
+
+        // CombineTextInputFormat reads its size from the standard key, set by DriverBMWSales from this option
+        return SampledTextInputFormat.sample(job, super.getSplits(job), "input.combine.split.maxsize",
+                (s, stratum, n, total) -> new Split((CombineFileSplit) s, stratum, n, total));
+    }
+
+    /**
+     * CombineFileSplit drawn by the sample, with its stratum.
+     */
+    public static class Split extends CombineFileSplit implements StratifiedSplit
+    {
+        private String stratum;
+        private int sampled, total;
+
+        public Split() {} // for deserialization
+
+        Split(CombineFileSplit s, String stratum, int sampled, int total) throws IOException
+        {
+            super(s.getPaths(), s.getStartOffsets(), s.getLengths(), s.getLocations());
+            this.stratum = stratum;
+            this.sampled = sampled;
+            this.total = total;
+        }
+
+        @Override
+        public String getStratum()
+        {
+            return stratum;
+        }
+
+        @Override
+        public int getSampled()
+        {
+            return sampled;
+        }
+
+        @Override
+        public int getTotal()
+        {
+            return total;
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException
+        {
+            super.write(out);
+            Text.writeString(out, stratum);
+            out.writeInt(sampled);
+            out.writeInt(total);
+        }
+
+        @Override
+        public void readFields(DataInput in) throws IOException
+        {
+            super.readFields(in);
+            stratum = Text.readString(in);
+            sampled = in.readInt();
+            total = in.readInt();
+        }
+    }
+}
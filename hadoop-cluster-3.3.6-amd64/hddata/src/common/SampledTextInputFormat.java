@@ -0,0 +1,171 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package common;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Input format of the sampling mode ("sample.fraction" < 1), used by Job 1 and by the Spark job:
+ * - Same splits as TextInputFormat, then a seeded sample of them is drawn per stratum (see {@link SplitSampler}),
+ *   so map tasks are only started for the drawn splits
+ * - A split is identified by "path:start" (first file of a CombineFileSplit) and its stratum is the folder of that file
+ * - The drawn splits carry their stratum and the sample size to the mappers ({@link StratifiedSplit})
+ * - More, smaller splits ("mapreduce.input.fileinputformat.split.maxsize") give tighter intervals; a stratum read in full
+ *   logs a warning naming that setting, or the one in "sample.split.size.property" (e.g. a Spark --conf)
+ */
+public class SampledTextInputFormat extends TextInputFormat
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SampledTextInputFormat.class);
+    private static final String SPLIT_MAXSIZE = "mapreduce.input.fileinputformat.split.maxsize";
+
+    /**
+     * Wraps a drawn split with its stratum.
+     */
+    interface Wrapper
+    {
+        InputSplit wrap(InputSplit split, String stratum, int sampled, int total) throws IOException;
+    }
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException
+    {
+        return sample(job, super.getSplits(job), SPLIT_MAXSIZE,
+                (s, stratum, n, total) -> new Split((FileSplit) s, stratum, n, total));
+    }
+
+    /**
+     * Draws the sample: per stratum, the n splits of lowest seeded rank.
+     *
+     * @param job       job whose configuration holds the fraction and the seed
+     * @param splits    all the splits of the input
+     * @param sizeKey   setting that sizes the splits, named when a stratum has too few of them
+     *                  (overridden by "sample.split.size.property")
+     * @param wrapper   builds the {@link StratifiedSplit} of a drawn split
+     * @return the drawn splits, at least two per stratum (all of a smaller one)
+     * @throws IOException if a split cannot be wrapped
+     */
+    static List<InputSplit> sample(JobContext job, List<InputSplit> splits, String sizeKey, Wrapper wrapper) throws IOException
+    {
+        Configuration conf = job.getConfiguration();
+        double fraction = conf.getDouble(SplitSampler.FRACTION, 1.0);
+        long seed = conf.getLong(SplitSampler.SEED, 42L);
+        String sizeHint = conf.get(SplitSampler.SIZE_PROPERTY, sizeKey);
+
+        Map<String, List<InputSplit>> strata = new TreeMap<>();
+        for (InputSplit s : splits)
+            strata.computeIfAbsent(file(s).getParent().toString(), k -> new ArrayList<>()).add(s);
+
+        List<InputSplit> kept = new ArrayList<>();
+        for (Map.Entry<String, List<InputSplit>> e : strata.entrySet())
+        {
+            List<InputSplit> all = e.getValue();
+            int n = SplitSampler.sampleSize(all.size(), fraction);
+            if (n == all.size())
+                LOG.warn("[sample] stratum {} has {} input split(s), all read; lower {} to sample it",
+                        e.getKey(), all.size(), sizeHint);
+
+            all.sort(Comparator.comparingDouble(s -> SplitSampler.rank(splitId(s), seed)));
+            for (InputSplit s : all.subList(0, n))
+                kept.add(wrapper.wrap(s, e.getKey(), n, all.size()));
+        }
+
+        LOG.info("[sample] {} of {} input splits sampled from {} strata", kept.size(), splits.size(), strata.size());
+        return kept;
+    }
+
+    private static Path file(InputSplit s)
+    {
+        return (s instanceof CombineFileSplit) ? ((CombineFileSplit) s).getPath(0) : ((FileSplit) s).getPath();
+    }
+
+    private static String splitId(InputSplit s)
+    {
+        long start = (s instanceof CombineFileSplit) ? ((CombineFileSplit) s).getOffset(0) : ((FileSplit) s).getStart();
+        return file(s) + ":" + start;
+    }
+
+    /**
+     * FileSplit drawn by the sample, with its stratum.
+     */
+    public static class Split extends FileSplit implements StratifiedSplit
+    {
+        private String stratum;
+        private int sampled, total;
+
+        public Split() {} // for deserialization
+
+        Split(FileSplit s, String stratum, int sampled, int total) throws IOException
+        {
+            super(s.getPath(), s.getStart(), s.getLength(), s.getLocations());
+            this.stratum = stratum;
+            this.sampled = sampled;
+            this.total = total;
+        }
+
+        @Override
+        public String getStratum()
+        {
+            return stratum;
+        }
+
+        @Override
+        public int getSampled()
+        {
+            return sampled;
+        }
+
+        @Override
+        public int getTotal()
+        {
+            return total;
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException
+        {
+            super.write(out);
+            Text.writeString(out, stratum);
+            out.writeInt(sampled);
+            out.writeInt(total);
+        }
+
+        @Override
+        public void readFields(DataInput in) throws IOException
+        {
+            super.readFields(in);
+            stratum = Text.readString(in);
+            sampled = in.readInt();
+            total = in.readInt();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package common;
+
+/**
+ * Stratified split sampling shared by the MapReduce and Spark drivers:
+ * - Whole input splits are kept or dropped, so the rows of a dropped split are never read
+ * - The splits are grouped into strata by the folder of their file: an input laid out by Region or Year
+ *   (e.g. input/region=asia/*.csv, input/2023/*.csv) is sampled per Region or Year; a single folder is one stratum
+ * - From a stratum of N splits, n = round(f * N) splits are drawn without replacement (at least 2, or all of them
+ *   when N <= 2): the ones with the smallest seeded hash of their identity, so the same input, seed and fraction
+ *   always give the same sample
+ * - Stratified expansion estimator: total = sum over the strata of N / n * (sum over the drawn splits), with
+ *   Var = sum over the strata of N^2 * (1 - n / N) * s^2 / n, s^2 being the sample variance of the split totals
+ * - The interval uses the Student t quantile at the level of z, with Satterthwaite's degrees of freedom:
+ *   with a handful of drawn splits, s^2 is itself uncertain and a normal interval would undercover
+ */
+public final class SplitSampler
+{
+    public static final String FRACTION = "sample.fraction";
+    public static final String SEED = "sample.seed";
+    public static final String SIZE_PROPERTY = "sample.split.size.property"; // split-size setting named by the warnings
+
+    private SplitSampler() {}
+
+    /**
+     * Seeded rank of a split; the n splits of lowest rank in a stratum are drawn.
+     *
+     * @param splitId   identity of the split, stable across runs (e.g. "path:startOffset")
+     * @param seed      sampling seed
+     * @return uniform value in [0, 1)
+     */
+    public static double rank(String splitId, long seed)
+    {
+        // FNV-1a over the id, then the SplitMix64 finalizer
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < splitId.length(); i++)
+        {
+            h ^= splitId.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h ^= (h >>> 31);
+
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Number of splits drawn from a stratum.
+     *
+     * @param total     number N of splits in the stratum
+     * @param fraction  sampling fraction in (0, 1]
+     * @return n, at least 2 (the variance needs two split totals) and at most N
+     */
+    public static int sampleSize(int total, double fraction)
+    {
+        long n = Math.round(fraction * total);
+        return (int) Math.min(total, Math.max(2, n));
+    }
+
+    /**
+     * Tag "n|N|stratum" carried next to the sums of a split (Job 1 values, Spark keys).
+     *
+     * @param split sampled split
+     * @return tag of its stratum
+     */
+    public static String tag(StratifiedSplit split)
+    {
+        return split.getSampled() + "|" + split.getTotal() + "|" + split.getStratum();
+    }
+
+    /**
+     * Expansion weight N / n of the splits drawn from a stratum.
+     *
+     * @param tag   stratum tag (see {@link #tag})
+     * @return weight of each drawn split
+     */
+    public static double weight(String tag)
+    {
+        String[] t = tag.split("\\|", 3);
+        return Double.parseDouble(t[1]) / Double.parseDouble(t[0]);
+    }
+
+    /**
+     * Variance of the estimated total contributed by one stratum.
+     *
+     * @param tag   stratum tag (see {@link #tag})
+     * @param sum   sum over the drawn splits of the split totals
+     * @param sumSq sum over the drawn splits of the squared split totals
+     * @return N^2 * (1 - n / N) * s^2 / n, 0 when the whole stratum was read
+     */
+    public static double variance(String tag, double sum, double sumSq)
+    {
+        String[] t = tag.split("\\|", 3);
+        double n = Double.parseDouble(t[0]);
+        double total = Double.parseDouble(t[1]);
+        if (n >= total || n < 2)
+            return 0.0;
+
+        double s2 = Math.max(0.0, (sumSq - sum * sum / n) / (n - 1));
+        return total * total * (1.0 - n / total) * s2 / n;
+    }
+
+    /**
+     * Satterthwaite term of one stratum, summed over the strata next to the variance.
+     *
+     * @param tag       stratum tag (see {@link #tag})
+     * @param variance  variance contributed by the stratum (see {@link #variance})
+     * @return variance^2 / (n - 1)
+     */
+    public static double satterthwaite(String tag, double variance)
+    {
+        double n = Double.parseDouble(tag.split("\\|", 3)[0]);
+        return (n < 2) ? 0.0 : variance * variance / (n - 1);
+    }
+
+    /**
+     * Degrees of freedom of the variance estimate.
+     *
+     * @param variance      variance summed over the strata
+     * @param satterthwaite Satterthwaite terms summed over the strata
+     * @return (sum of variances)^2 / (sum of terms), infinite when no stratum contributes
+     */
+    public static double degreesOfFreedom(double variance, double satterthwaite)
+    {
+        return (satterthwaite > 0) ? variance * variance / satterthwaite : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Half-width of the confidence interval of an estimated total.
+     *
+     * @param variance  variance of the estimate, summed over the strata
+     * @param df        degrees of freedom (see {@link #degreesOfFreedom})
+     * @param z         z-score giving the level of the interval (1.96 = 95%)
+     * @return half-width, in the unit of the total
+     */
+    public static double halfWidth(double variance, double df, double z)
+    {
+        return studentT(z, df) * Math.sqrt(variance);
+    }
+
+    /**
+     * Student t quantile at the normal quantile z (Cornish-Fisher expansion, Abramowitz-Stegun 26.7.5;
+     * 2.446 for z = 1.96 and 6 degrees of freedom, exact value 2.447).
+     */
+    private static double studentT(double z, double df)
+    {
+        if (Double.isInfinite(df))
+            return z;
+
+        double v = Math.max(1.0, df);
+        double z2 = z * z;
+        double g1 = (z2 + 1) * z / 4;
+        double g2 = ((5 * z2 + 16) * z2 + 3) * z / 96;
+        double g3 = (((3 * z2 + 19) * z2 + 17) * z2 - 15) * z / 384;
+        double g4 = ((((79 * z2 + 776) * z2 + 1482) * z2 - 1920) * z2 - 945) * z / 92160;
+        return z + g1 / v + g2 / (v * v) + g3 / (v * v * v) + g4 / (v * v * v * v);
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package common;
+
+/**
+ * Input split of the sampling mode: its stratum and the size of the sample drawn from it
+ * (see {@link SampledTextInputFormat}, {@link SplitSampler})
+ */
+public interface StratifiedSplit
+{
+    /**
+     * @return stratum of the split: the folder holding its file(s)
+     */
+    String getStratum();
+
+    /**
+     * @return number n of splits drawn from the stratum
+     */
+    int getSampled();
+
+    /**
+     * @return number N of splits in the stratum
+     */
+    int getTotal();
+}
@@ -0,0 +1,658 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package local;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Standalone local engine (no Hadoop, no Spark):
+ * - Memory-maps the CSV with NIO and splits the mapping into chunks on line boundaries
+ * - Aggregates chunks in parallel on a ForkJoinPool, each chunk into its own primitive accumulators
+ * - Writes the same outputs as DriverBMWSales (out_1, out_2, out_3) and SparkDriver (out_spark)
+ */
+public class LocalDriver
+{
+    private static final int MIN_CHUNK = 1 << 20;    // 1 MiB
+    private static final int MAX_CHUNK = 64 << 20;   // 64 MiB, well below the 2 GiB mapping limit
+
+    /**
+     * Runs the whole analysis on a local file.
+     *
+     * @param args  CLI arguments: input, out_1, out_2, out_3, out_spark, [topK], [threads]
+     * @throws Exception if reading the input or writing the outputs fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 5)
+        {
+            System.err.println("Usage: LocalDriver <input> <out_1> <out_2> <out_3> <out_spark> [topK=5] [threads=#cores]");
+            System.exit(1);
+        }
+
+        Path in = Paths.get(args[0]);
+        Path o1 = Paths.get(args[1]);
+        Path o2 = Paths.get(args[2]);
+        Path o3 = Paths.get(args[3]);
+        Path os = Paths.get(args[4]);
+        int topK = (args.length > 5) ? Integer.parseInt(args[5]) : 5;
+        int threads = (args.length > 6) ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+
+        // Same behaviour as Hadoop/Spark: never overwrite an existing output
+        for (Path o : new Path[] { o1, o2, o3, os })
+        {
+            if (Files.exists(o))
+            {
+                System.err.println("Output directory " + o + " already exists");
+                System.exit(1);
+            }
+        }
+
+        long t0 = System.nanoTime();
+        Partial total = aggregate(in, threads);
+        long t1 = System.nanoTime();
+
+        writeOutputs(total, o1, o2, o3, os, topK);
+        long t2 = System.nanoTime();
+
+        System.out.printf(Locale.US, "Local run: %d rows, %d bytes, aggregate %d ms, write %d ms (%d threads)%n",
+                total.rows, Files.size(in), (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000, threads);
+    }
+
+    /**
+     * Maps the input file in line-aligned chunks and aggregates them in parallel.
+     *
+     * @param in        CSV file
+     * @param threads   ForkJoinPool parallelism
+     * @return merged aggregation state
+     * @throws IOException if the file cannot be read
+     */
+    static Partial aggregate(Path in, int threads) throws IOException
+    {
+        try (FileChannel ch = FileChannel.open(in, StandardOpenOption.READ))
+        {
+            long size = ch.size();
+            long target = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / Math.max(1, threads * 4L)));
+            long[] bounds = chunkBounds(ch, size, target);
+
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try
+            {
+                List<ForkJoinTask<Partial>> tasks = new ArrayList<>();
+                for (int i = 0; i + 1 < bounds.length; i++)
+                {
+                    MappedByteBuffer mb = ch.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]);
+                    tasks.add(pool.submit(new ChunkTask(mb)));
+                }
+
+                Partial total = new Partial();
+                for (ForkJoinTask<Partial> t : tasks)
+                    total.merge(t.join());
+
+                return total;
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Computes chunk boundaries: every boundary (except 0 and size) is the byte right after a '\n'.
+     *
+     * @param ch        open channel
+     * @param size      file size
+     * @param target    target chunk size in bytes
+     * @return ascending offsets, first = 0, last = size
+     * @throws IOException if the channel cannot be read
+     */
+    private static long[] chunkBounds(FileChannel ch, long size, long target) throws IOException
+    {
+        List<Long> b = new ArrayList<>();
+        b.add(0L);
+
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long pos = target;
+        while (pos < size)
+        {
+            // Advance pos to the first byte after the next newline
+            long next = -1;
+            long p = pos;
+            while (next < 0 && p < size)
+            {
+                probe.clear();
+                int n = ch.read(probe, p);
+                if (n <= 0)
+                    break;
+
+                for (int i = 0; i < n; i++)
+                {
+                    if (probe.get(i) == '\n')
+                    {
+                        next = p + i + 1;
+                        break;
+                    }
+                }
+                p += n;
+            }
+
+            if (next < 0 || next >= size)
+                break;
+
+            b.add(next);
+            pos = next + target;
+        }
+        b.add(size);
+
+        long[] out = new long[b.size()];
+        for (int i = 0; i < out.length; i++)
+            out[i] = b.get(i);
+
+        return out;
+    }
+
+    /**
+     * Writes out_1, out_2, out_3 (MapReduce formats) and out_spark (Spark format).
+     *
+     * @param agg   merged aggregation state
+     * @param o1    Job 1 output directory
+     * @param o2    Job 2 output directory
+     * @param o3    Job 3 output directory
+     * @param os    Spark output directory
+     * @param topK  rows per region in out_3
+     * @throws IOException if writing fails
+     */
+    private static void writeOutputs(Partial agg, Path o1, Path o2, Path o3, Path os, int topK) throws IOException
+    {
+        // ---- out_1: region \t model \t count|sumVolume|sumPrice|highCount (sorted like Text keys) ----
+        List<String> regions = sortedKeys(agg.regionModel.keySet());
+        Map<String, Long> regionTotals = new HashMap<>();
+        try (BufferedWriter w = openPart(o1, "part-r-00000"))
+        {
+            for (String region : regions)
+            {
+                Map<String, long[]> models = agg.regionModel.get(region);
+                long tot = 0;
+                for (String model : sortedKeys(models.keySet()))
+                {
+                    long[] a = models.get(model);
+                    tot += a[1];
+                    w.write(region + "\t" + model + "\t" + a[0] + "|" + a[1] + "|" + a[2] + "|" + a[3]);
+                    w.newLine();
+                }
+                regionTotals.put(region, tot);
+            }
+        }
+        touchSuccess(o1);
+
+        // ---- out_2: region \t regionTotalVolume ----
+        try (BufferedWriter w = openPart(o2, "part-r-00000"))
+        {
+            for (String region : regions)
+            {
+                w.write(region + "\t" + regionTotals.get(region));
+                w.newLine();
+            }
+        }
+        touchSuccess(o2);
+
+        // ---- out_3: region \t model \t sumVol \t sharePct \t avgPrice \t highShare (Top-K by sumVol desc) ----
+        try (BufferedWriter w = openPart(o3, "part-r-00000"))
+        {
+            for (String region : regions)
+            {
+                final Map<String, long[]> models = agg.regionModel.get(region);
+                List<String> byVol = sortedKeys(models.keySet());
+                byVol.sort((a, b) -> Long.compare(models.get(b)[1], models.get(a)[1]));
+
+                long tot = regionTotals.get(region);
+                for (int k = 0; k < byVol.size() && k < topK; k++)
+                {
+                    String model = byVol.get(k);
+                    long[] a = models.get(model);
+                    double share = (tot > 0) ? (100.0 * a[1] / tot) : 0.0;
+                    double avgPrice  = (a[0] > 0) ? ((double) a[2] / a[0]) : 0.0;
+                    double highShare = (a[0] > 0) ? (100.0 * a[3] / a[0]) : 0.0;
+
+                    w.write(region + "\t" + model + "\t" + a[1] + "\t"
+                            + String.format(Locale.US, "%.4f", share) + "\t"
+                            + String.format(Locale.US, "%.2f", avgPrice) + "\t"
+                            + String.format(Locale.US, "%.2f", highShare));
+                    w.newLine();
+                }
+            }
+        }
+        touchSuccess(o3);
+
+        // ---- out_spark: ageGroup \t model \t totalVolume (best-selling model per age group) ----
+        try (BufferedWriter w = openPart(os, "part-00000"))
+        {
+            for (String age : sortedKeys(agg.ageModel.keySet()))
+            {
+                Map<String, long[]> models = agg.ageModel.get(age);
+                String best = null;
+                long bestVol = Long.MIN_VALUE;
+                for (String model : sortedKeys(models.keySet()))
+                {
+                    long v = models.get(model)[0];
+                    if (v > bestVol)
+                    {
+                        best = model;
+                        bestVol = v;
+                    }
+                }
+                w.write(age + "\t" + best + "\t" + bestVol);
+                w.newLine();
+            }
+        }
+        touchSuccess(os);
+    }
+
+    /**
+     * Sorts strings by their UTF-8 bytes (the order Hadoop uses for Text keys).
+     *
+     * @param keys  keys to sort
+     * @return new sorted list
+     */
+    private static List<String> sortedKeys(Collection<String> keys)
+    {
+        List<String> l = new ArrayList<>(keys);
+        l.sort((a, b) -> {
+            byte[] x = a.getBytes(StandardCharsets.UTF_8);
+            byte[] y = b.getBytes(StandardCharsets.UTF_8);
+            int n = Math.min(x.length, y.length);
+            for (int i = 0; i < n; i++)
+            {
+                int c = (x[i] & 0xff) - (y[i] & 0xff);
+                if (c != 0)
+                    return c;
+            }
+            return x.length - y.length;
+        });
+        return l;
+    }
+
+    private static BufferedWriter openPart(Path dir, String name) throws IOException
+    {
+        Files.createDirectories(dir);
+        return Files.newBufferedWriter(dir.resolve(name), StandardCharsets.UTF_8);
+    }
+
+    private static void touchSuccess(Path dir) throws IOException
+    {
+        Files.write(dir.resolve("_SUCCESS"), new byte[0]);
+    }
+
+    /**
+     * Per-chunk aggregation state. Keys are the strings Mapper1 / SparkDriver would emit,
+     * values are primitive accumulators updated in place.
+     */
+    static final class Partial
+    {
+        // region -> model -> {count, sumVolume, sumPrice, highCount} (Mapper1 key, lower-cased)
+        final Map<String, Map<String, long[]>> regionModel = new HashMap<>();
+        // ageGroup -> model -> {totalVolume} (SparkDriver key, original case)
+        final Map<String, Map<String, long[]>> ageModel = new HashMap<>();
+        long rows;
+
+        long[] regionModelAcc(String region, String model)
+        {
+            return acc(regionModel, region, model, 4);
+        }
+
+        long[] ageModelAcc(String age, String model)
+        {
+            return acc(ageModel, age, model, 1);
+        }
+
+        private static long[] acc(Map<String, Map<String, long[]>> m, String k1, String k2, int width)
+        {
+            Map<String, long[]> inner = m.get(k1);
+            if (inner == null)
+            {
+                inner = new HashMap<>();
+                m.put(k1, inner);
+            }
+
+            long[] a = inner.get(k2);
+            if (a == null)
+            {
+                a = new long[width];
+                inner.put(k2, a);
+            }
+            return a;
+        }
+
+        /**
+         * Adds another partial into this one, component-wise.
+         *
+         * @param o partial to merge
+         */
+        void merge(Partial o)
+        {
+            mergeInto(regionModel, o.regionModel, 4);
+            mergeInto(ageModel, o.ageModel, 1);
+            rows += o.rows;
+        }
+
+        private static void mergeInto(Map<String, Map<String, long[]>> dst, Map<String, Map<String, long[]>> src, int width)
+        {
+            for (Map.Entry<String, Map<String, long[]>> e1 : src.entrySet())
+            {
+                for (Map.Entry<String, long[]> e2 : e1.getValue().entrySet())
+                {
+                    long[] a = acc(dst, e1.getKey(), e2.getKey(), width);
+                    long[] b = e2.getValue();
+                    for (int i = 0; i < width; i++)
+                        a[i] += b[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses one mapped chunk line by line, replicating the parsing rules of Mapper1 and SparkDriver.
+     */
+    static final class ChunkTask extends RecursiveTask<Partial>
+    {
+        private static final long serialVersionUID = 1L;
+        private static final int FIELDS = 11;
+
+        private final MappedByteBuffer mb;
+        private final Partial part = new Partial();
+        private final Map<ByteSlice, String> strings = new HashMap<>(); // interned field values
+        private final Map<String, String> lower = new HashMap<>();      // cached toLowerCase()
+        private final ByteSlice probe = new ByteSlice();
+        private final int[] fs = new int[FIELDS];   // field start offsets
+        private final int[] fe = new int[FIELDS];   // field end offsets (exclusive)
+        private byte[] line = new byte[256];
+
+        ChunkTask(MappedByteBuffer mb)
+        {
+            this.mb = mb;
+        }
+
+        @Override
+        protected Partial compute()
+        {
+            int len = 0;
+            int n = mb.limit();
+            for (int i = 0; i < n; i++)
+            {
+                byte b = mb.get(i);
+                if (b == '\n')
+                {
+                    processLine(len);
+                    len = 0;
+                    continue;
+                }
+
+                if (len == line.length)
+                    line = Arrays.copyOf(line, len * 2);
+                line[len++] = b;
+            }
+
+            if (len > 0)
+                processLine(len);
+
+            return part;
+        }
+
+        /**
+         * Applies the Mapper1 and SparkDriver rules to line[0, len).
+         *
+         * @param len line length in bytes
+         */
+        private void processLine(int len)
+        {
+            // Hadoop and Spark both strip a trailing '\r'
+            if (len > 0 && line[len - 1] == '\r')
+                len--;
+
+            int s = 0, e = len;
+            while (s < e && (line[s] & 0xff) <= ' ')
+                s++;
+            while (e > s && (line[e - 1] & 0xff) <= ' ')
+                e--;
+
+            // Both jobs ignore blank lines
+            if (s == e)
+                return;
+
+            part.rows++;
+
+            // Locate the first 11 fields (split(",", -1) semantics, only the count of the rest matters)
+            int nf = 0, start = 0;
+            for (int i = 0; i < len && nf < FIELDS; i++)
+            {
+                if (line[i] == ',')
+                {
+                    fs[nf] = start;
+                    fe[nf] = i;
+                    nf++;
+                    start = i + 1;
+                }
+            }
+            if (nf < FIELDS)
+            {
+                fs[nf] = start;
+                fe[nf] = len;
+                nf++;
+            }
+
+            // SparkDriver: header is a line starting with "model," (case-insensitive)
+            boolean sparkHeader = startsWithIgnoreCase(s, e, "model,");
+            if (nf < FIELDS)
+            {
+                // SparkDriver emits (("invalid","invalid"), 0) for short rows
+                if (!sparkHeader)
+                    part.ageModelAcc("invalid", "invalid");
+                return;
+            }
+
+            String model = field(0);
+
+            // ---- Mapper1 ----
+            if (!"Model".equalsIgnoreCase(model))
+            {
+                String region = field(2);
+                if (!region.isEmpty() && !model.isEmpty())
+                {
+                    long[] a = part.regionModelAcc(lower(region), lower(model));
+                    a[0] += 1;
+                    a[1] += parseInt(9);
+                    a[2] += parseInt(8);
+                    a[3] += equalsIgnoreCase(10, "high") ? 1 : 0;
+                }
+            }
+
+            // ---- SparkDriver ----
+            if (!sparkHeader)
+                part.ageModelAcc(bucketYear(parseInt(1)), model)[0] += parseInt(9);
+        }
+
+        /**
+         * Returns the trimmed field i as an interned String.
+         *
+         * @param i field index
+         * @return field value
+         */
+        private String field(int i)
+        {
+            int s = fs[i], e = fe[i];
+            while (s < e && (line[s] & 0xff) <= ' ')
+                s++;
+            while (e > s && (line[e - 1] & 0xff) <= ' ')
+                e--;
+
+            probe.set(line, s, e - s);
+            String v = strings.get(probe);
+            if (v == null)
+            {
+                ByteSlice k = new ByteSlice();
+                k.set(Arrays.copyOfRange(line, s, e), 0, e - s);
+                v = new String(k.b, 0, k.len, StandardCharsets.UTF_8);
+                strings.put(k, v);
+            }
+            return v;
+        }
+
+        private String lower(String s)
+        {
+            String l = lower.get(s);
+            if (l == null)
+            {
+                l = s.toLowerCase();
+                lower.put(s, l);
+            }
+            return l;
+        }
+
+        /**
+         * Parses the trimmed field i like Integer.parseInt, with fallback to 0.
+         *
+         * @param i field index
+         * @return integer value or 0 if parsing fails
+         */
+        private int parseInt(int i)
+        {
+            int s = fs[i], e = fe[i];
+            while (s < e && (line[s] & 0xff) <= ' ')
+                s++;
+            while (e > s && (line[e - 1] & 0xff) <= ' ')
+                e--;
+
+            if (s == e)
+                return 0;
+
+            boolean neg = false;
+            if (line[s] == '-' || line[s] == '+')
+            {
+                neg = line[s] == '-';
+                if (++s == e)
+                    return 0;
+            }
+
+            long v = 0;
+            for (int j = s; j < e; j++)
+            {
+                int d = line[j] - '0';
+                if (d < 0 || d > 9)
+                    return 0;
+
+                v = v * 10 + d;
+                if (v > Integer.MAX_VALUE + 1L)
+                    return 0;
+            }
+
+            v = neg ? -v : v;
+            return (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) ? 0 : (int) v;
+        }
+
+        private boolean equalsIgnoreCase(int i, String ascii)
+        {
+            int s = fs[i], e = fe[i];
+            while (s < e && (line[s] & 0xff) <= ' ')
+                s++;
+            while (e > s && (line[e - 1] & 0xff) <= ' ')
+                e--;
+
+            return e - s == ascii.length() && startsWithIgnoreCase(s, e, ascii);
+        }
+
+        private boolean startsWithIgnoreCase(int s, int e, String ascii)
+        {
+            if (e - s < ascii.length())
+                return false;
+
+            for (int j = 0; j < ascii.length(); j++)
+            {
+                if (Character.toLowerCase((char) line[s + j]) != ascii.charAt(j))
+                    return false;
+            }
+            return true;
+        }
+
+        // Same bucketing as SparkDriver
+        private static String bucketYear(int year)
+        {
+            if (year <= 2014)
+                return "age<=2014";
+
+            if (year <= 2018)
+                return "2015_2018";
+
+            if (year <= 2021)
+                return "2019_2021";
+
+            return ">=2022";
+        }
+    }
+
+    /**
+     * Mutable view over a byte range, used to look up interned strings without allocating.
+     */
+    static final class ByteSlice
+    {
+        byte[] b;
+        int off, len, hash;
+
+        void set(byte[] b, int off, int len)
+        {
+            this.b = b;
+            this.off = off;
+            this.len = len;
+
+            int h = 1;
+            for (int i = off; i < off + len; i++)
+                h = 31 * h + b[i];
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof ByteSlice))
+                return false;
+
+            ByteSlice x = (ByteSlice) o;
+            if (x.len != len || x.hash != hash)
+                return false;
+
+            for (int i = 0; i < len; i++)
+            {
+                if (b[off + i] != x.b[x.off + i])
+                    return false;
+            }
+            return true;
+        }
+    }
+}
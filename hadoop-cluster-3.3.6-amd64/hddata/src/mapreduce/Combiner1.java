@@ -22,6 +22,8 @@ import java.io.IOException;
 /**
  * Job 1 Combiner:
  * - Sums the 4 integers in the payload "count|sumVolume|sumPrice|highCount"
+ * - Sampling mode payload "count|sumVolume|sumPrice|highCount|sumVolumeSq|n|N|stratum": sums per stratum
+ *   (see {@link StratumSums}), one value per stratum
  * - Reduces shuffle size
  */
 public class Combiner1 extends Reducer<Text, Text, Text, Text>
@@ -41,17 +43,32 @@ public class Combiner1 extends Reducer<Text, Text, Text, Text>
     @Override
     protected void reduce(Text key, Iterable<Text> values, Context ctx) throws IOException, InterruptedException
     {
-        int c = 0, vol = 0, prc = 0, hi = 0;
+        long c = 0, vol = 0, prc = 0, hi = 0;
+        StratumSums strata = new StratumSums();
         for (Text t : values)
         {
-            String[] p = t.toString().split("\\|");
-            if (p.length >= 4)
+            String[] p = t.toString().split("\\|", StratumSums.FIELDS);
+            if (p.length == StratumSums.FIELDS)
             {
-                c   += safeInt(p[0]);
-                vol += safeInt(p[1]);
-                prc += safeInt(p[2]);
-                hi  += safeInt(p[3]);
+                strata.add(p);
             }
+            else if (p.length >= 4)
+            {
+                c   += safeLong(p[0]);
+                vol += safeLong(p[1]);
+                prc += safeLong(p[2]);
+                hi  += safeLong(p[3]);
+            }
+        }
+
+        if (!strata.isEmpty())
+        {
+            for (String v : strata.partials())
+            {
+                outVal.set(v);
+                ctx.write(key, outVal);
+            }
+            return;
         }
 
         outVal.set(c + "|" + vol + "|" + prc + "|" + hi);
@@ -59,16 +76,16 @@ public class Combiner1 extends Reducer<Text, Text, Text, Text>
     }
 
     /**
-     * Parses a string as integer with fallback to 0.
+     * Parses a string as long with fallback to 0.
      *
      * @param s string to parse
-     * @return integer value or 0 if parsing fails
+     * @return long value or 0 if parsing fails
      */
-    private int safeInt(String s)
+    private long safeLong(String s)
     {
         try
         {
-            return Integer.parseInt(s);
+            return Long.parseLong(s);
         }
         catch(Exception e)
         {
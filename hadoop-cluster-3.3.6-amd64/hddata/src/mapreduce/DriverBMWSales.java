@@ -15,31 +15,51 @@
  */
 package mapreduce;
 
+import common.ResultCache;
+import common.SampledCombineTextInputFormat;
+import common.SampledTextInputFormat;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.*;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.CombineTextInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Driver:
  * - Chains 3 jobs (Job 1, Job 2, Job 3)
  * - Passes Job 2 step2.totals.path to Job 3
+ * - Skips any job whose output already matches its inputs and parameters (see {@link ResultCache})
+ * - Optional combine-input mode for Job 1 ("input.combine.enabled"): many small files are packed into
+ *   node/rack-local splits of "input.combine.split.maxsize" bytes (CombineTextInputFormat)
+ * - Optional sampling mode ("sample.fraction" < 1): early approximate answers with confidence bounds,
+ *   Job 1 reads a seeded sample of its input splits (see {@link SampledTextInputFormat}, {@link Mapper3}, {@link Reducer3})
  */
 public class DriverBMWSales
 {
+    public static final String COMBINE_ENABLED = "input.combine.enabled";
+    public static final String COMBINE_MAX_SPLIT = "input.combine.split.maxsize";
+    public static final String SPLIT_MAX = "mapreduce.input.fileinputformat.split.maxsize";
+
     /**
      * Chains Job 1 -> Job 2 -> Job 3, wiring outputs and passing configuration for the final step.
      *
-     * @param args  CLI arguments: input, out_1, out_2, out_3, [topK]
+     * @param args  CLI arguments: [generic options, e.g. -D result.cache.enabled=false] input, out_1, out_2, out_3, [topK]
      * @throws Exception if job submission or execution fails
      */
     public static void main(String[] args) throws Exception
     {
+        Configuration base = new Configuration();
+        args = new GenericOptionsParser(base, args).getRemainingArgs();
+
         if (args.length < 4)
         {
-            System.err.println("Usage: DriverBMWSales <input> <out_1> <out_2> <out_3> [topK=5]");
+            System.err.println("Usage: DriverBMWSales [-D key=value ...] <input> <out_1> <out_2> <out_3> [topK=5]");
             System.exit(1);
         }
 
@@ -49,71 +69,140 @@ public class DriverBMWSales
         String o3 = args[3];
         int topK = (args.length > 4) ? Integer.parseInt(args[4]) : 5;
 
-        // ---- Job 1 ----
-        Configuration c1 = new Configuration();
-        Job j1 = Job.getInstance(c1);
-        j1.setJobName("BMW - Region/Model Aggregate");
-        j1.setJarByClass(DriverBMWSales.class);
-        j1.setMapperClass(Mapper1.class);
-        j1.setCombinerClass(Combiner1.class); // combines component-wise sums to reduce shuffle
-        j1.setReducerClass(Reducer1.class);
-
-        j1.setMapOutputKeyClass(Text.class);
-        j1.setMapOutputValueClass(Text.class);
-        j1.setOutputKeyClass(Text.class);
-        j1.setOutputValueClass(Text.class);
-
-        j1.setInputFormatClass(TextInputFormat.class);
-        j1.setOutputFormatClass(TextOutputFormat.class);
-        TextInputFormat.addInputPath(j1, new Path(in));
-        TextOutputFormat.setOutputPath(j1, new Path(o1));
-        j1.setNumReduceTasks(1);
-        if (!j1.waitForCompletion(true))
+        ResultCache cache = new ResultCache(base);
+        cache.checkOutputs(new Path(o1), new Path(o2), new Path(o3));
+
+        double fraction = base.getDouble(Mapper1.SAMPLE_FRACTION, 1.0);
+        if (fraction <= 0.0 || fraction > 1.0)
+        {
+            System.err.println("sample.fraction must be in (0, 1]");
             System.exit(1);
+        }
+        if (fraction < 1.0)
+            System.out.println("[sample] approximate run on ~" + (100.0 * fraction) + "% of the input splits");
+
+        // Sampling parameters change the results, so they are part of the fingerprints
+        Map<String,String> sample = new HashMap<>();
+        sample.put(Mapper1.SAMPLE_FRACTION, String.valueOf(fraction));
+        if (fraction < 1.0)
+        {
+            // The sampling units are the input splits, so their size matters too
+            sample.put(Mapper1.SAMPLE_SEED, base.get(Mapper1.SAMPLE_SEED, "42"));
+            sample.put(SPLIT_MAX, base.get(SPLIT_MAX, ""));
+            sample.put(COMBINE_MAX_SPLIT, base.get(COMBINE_MAX_SPLIT, ""));
+        }
+
+        // ---- Job 1 ----
+        String fp1 = cache.fingerprint("job1", sample, ResultCache.inputPaths(in));
+        if (!cache.isCached("Job 1", new Path(o1), fp1))
+        {
+            Configuration c1 = new Configuration(base);
+            Job j1 = Job.getInstance(c1);
+            j1.setJobName("BMW - Region/Model Aggregate");
+            j1.setJarByClass(DriverBMWSales.class);
+            j1.setMapperClass(Mapper1.class);
+            j1.setCombinerClass(Combiner1.class); // combines component-wise sums to reduce shuffle
+            j1.setReducerClass(Reducer1.class);
+
+            j1.setMapOutputKeyClass(Text.class);
+            j1.setMapOutputValueClass(Text.class);
+            j1.setOutputKeyClass(Text.class);
+            j1.setOutputValueClass(Text.class);
+
+            if (c1.getBoolean(COMBINE_ENABLED, false))
+            {
+                // One map task per packed split instead of one per file; Mapper1 skips headers per line,
+                // so every file's header is still dropped. Node/rack grouping can be tuned with
+                // mapreduce.input.fileinputformat.split.minsize.per.node / .per.rack
+                j1.setInputFormatClass((fraction < 1.0) ? SampledCombineTextInputFormat.class : CombineTextInputFormat.class);
+                CombineTextInputFormat.setMaxInputSplitSize(j1, c1.getLong(COMBINE_MAX_SPLIT, 128L * 1024 * 1024));
+            }
+            else
+            {
+                j1.setInputFormatClass((fraction < 1.0) ? SampledTextInputFormat.class : TextInputFormat.class);
+            }
+            j1.setOutputFormatClass(TextOutputFormat.class);
+            FileInputFormat.addInputPaths(j1, in); // Comma-separated list of paths or globs
+            Path staged1 = cache.staging(new Path(o1));
+            TextOutputFormat.setOutputPath(j1, staged1);
+            j1.setNumReduceTasks(1);
+
+            long t1 = System.currentTimeMillis();
+            if (!j1.waitForCompletion(true))
+                System.exit(1);
+            cache.commit(staged1, new Path(o1), fp1, System.currentTimeMillis() - t1);
+        }
 
         // ---- Job 2 ----
-        Configuration c2 = new Configuration();
-        Job j2 = Job.getInstance(c2);
-        j2.setJobName("BMW - Region Totals");
-        j2.setJarByClass(DriverBMWSales.class);
-        j2.setMapperClass(Mapper2.class);
-        j2.setReducerClass(Reducer2.class);
-
-        j2.setMapOutputKeyClass(Text.class);
-        j2.setMapOutputValueClass(IntWritable.class);
-        j2.setOutputKeyClass(Text.class);
-        j2.setOutputValueClass(IntWritable.class);
-
-        j2.setInputFormatClass(TextInputFormat.class);
-        j2.setOutputFormatClass(TextOutputFormat.class);
-        TextInputFormat.addInputPath(j2, new Path(o1));
-        TextOutputFormat.setOutputPath(j2, new Path(o2));
-        j2.setNumReduceTasks(1);
-        if (!j2.waitForCompletion(true))
-            System.exit(2);
+        String fp2 = cache.fingerprint("job2", new HashMap<String,String>(), new Path(o1));
+        if (!cache.isCached("Job 2", new Path(o2), fp2))
+        {
+            Configuration c2 = new Configuration(base);
+            Job j2 = Job.getInstance(c2);
+            j2.setJobName("BMW - Region Totals");
+            j2.setJarByClass(DriverBMWSales.class);
+            j2.setMapperClass(Mapper2.class);
+            j2.setReducerClass(Reducer2.class);
+
+            j2.setMapOutputKeyClass(Text.class);
+            j2.setMapOutputValueClass(LongWritable.class);
+            j2.setOutputKeyClass(Text.class);
+            j2.setOutputValueClass(LongWritable.class);
+
+            j2.setInputFormatClass(TextInputFormat.class);
+            j2.setOutputFormatClass(TextOutputFormat.class);
+            TextInputFormat.addInputPath(j2, new Path(o1));
+            Path staged2 = cache.staging(new Path(o2));
+            TextOutputFormat.setOutputPath(j2, staged2);
+            j2.setNumReduceTasks(1);
+
+            long t2 = System.currentTimeMillis();
+            if (!j2.waitForCompletion(true))
+                System.exit(2);
+            cache.commit(staged2, new Path(o2), fp2, System.currentTimeMillis() - t2);
+        }
 
         // ---- Job 3 ----
-        Configuration c3 = new Configuration();
-        c3.setInt("top.k", topK);           // how many rows to emit per region
-        c3.set("step2.totals.path", o2);    // where Mapper3 will load region totals from
-
-        Job j3 = Job.getInstance(c3);
-        j3.setJobName("BMW - Top-K per Region");
-        j3.setJarByClass(DriverBMWSales.class);
-        j3.setMapperClass(Mapper3.class);
-        j3.setReducerClass(Reducer3.class);
-
-        j3.setMapOutputKeyClass(Text.class);
-        j3.setMapOutputValueClass(Text.class);
-        j3.setOutputKeyClass(Text.class);
-        j3.setOutputValueClass(Text.class);
-
-        j3.setInputFormatClass(TextInputFormat.class);
-        j3.setOutputFormatClass(TextOutputFormat.class);
-        TextInputFormat.addInputPath(j3, new Path(o1));
-        TextOutputFormat.setOutputPath(j3, new Path(o3));
-        j3.setNumReduceTasks(1);
-        if(!j3.waitForCompletion(true))
-            System.exit(3);
+        Map<String,String> p3 = new HashMap<>(sample);
+        p3.put("top.k", String.valueOf(topK));
+        p3.put("step2.totals.path", o2);
+        if (fraction < 1.0)
+            p3.put(Mapper3.SAMPLE_Z, base.get(Mapper3.SAMPLE_Z, "1.96"));
+        String fp3 = cache.fingerprint("job3", p3, new Path(o1), new Path(o2));
+        if (!cache.isCached("Job 3", new Path(o3), fp3))
+        {
+            Configuration c3 = new Configuration(base);
+            c3.setInt("top.k", topK);           // how many rows to emit per region
+            c3.set("step2.totals.path", o2);    // where Mapper3 will load region totals from
+
+            Job j3 = Job.getInstance(c3);
+            j3.setJobName("BMW - Top-K per Region");
+            j3.setJarByClass(DriverBMWSales.class);
+            j3.setMapperClass(Mapper3.class);
+            j3.setReducerClass(Reducer3.class);
+
+            // Secondary sort: partition and group on region, sort on (region, sumVol desc)
+            j3.setPartitionerClass(RegionPartitioner.class);
+            j3.setGroupingComparatorClass(RegionGroupingComparator.class);
+
+            j3.setMapOutputKeyClass(RegionVolumeKey.class);
+            j3.setMapOutputValueClass(Text.class);
+            j3.setOutputKeyClass(Text.class);
+            j3.setOutputValueClass(Text.class);
+
+            j3.setInputFormatClass(TextInputFormat.class);
+            j3.setOutputFormatClass(TextOutputFormat.class);
+            TextInputFormat.addInputPath(j3, new Path(o1));
+            Path staged3 = cache.staging(new Path(o3));
+            TextOutputFormat.setOutputPath(j3, staged3);
+            j3.setNumReduceTasks(1);
+
+            long t3 = System.currentTimeMillis();
+            if(!j3.waitForCompletion(true))
+                System.exit(3);
+            cache.commit(staged3, new Path(o3), fp3, System.currentTimeMillis() - t3);
+        }
+
+        cache.logSummary();
     }
-}
\ No newline at end of file
+}
@@ -15,23 +15,72 @@
  */
 package mapreduce;
 
+import common.SplitSampler;
+import common.StratifiedSplit;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Job 1 Mapper:
- * - Parses CSV rows (expects header starting with "Model")
+ * - Parses CSV rows (expects header starting with "Model"); the header check is per line,
+ *   so it also holds when CombineTextInputFormat packs many files into one split
  * - Key = "region \t model"
  * - Value = "1|sumVolume|sumPrice|isHigh"
+ * - Optional in-mapper combining ("mapper1.inmapper.combine") into an {@link OffHeapAggMap},
+ *   flushed every "mapper1.inmapper.max.keys" distinct keys and in cleanup()
+ * - Optional sampling mode ("sample.fraction" < 1): the input format only hands over the sampled splits
+ *   (see {@link common.SampledTextInputFormat}); the whole split is aggregated in the off-heap map and each value
+ *   becomes "c|vol|prc|hi|volSq|n|N|stratum": the squared split total of the volume (a double: squares of long
+ *   totals overflow) and the stratum tag of the split, for the estimates of {@link Reducer1}
  */
 public class Mapper1 extends Mapper<LongWritable, Text, Text, Text>
 {
+    public static final String INMAPPER_COMBINE = "mapper1.inmapper.combine";
+    public static final String INMAPPER_MAX_KEYS = "mapper1.inmapper.max.keys";
+    public static final String SAMPLE_FRACTION = SplitSampler.FRACTION;
+    public static final String SAMPLE_SEED = SplitSampler.SEED;
+
     private final Text outKey = new Text();
     private final Text outVal = new Text();
 
+    // Field boundaries of the current line and the "region \t model" key, reused across rows
+    private final int[] from = new int[11];
+    private final int[] to = new int[11];
+    private byte[] keyBuf = new byte[64];
+    private int keyLen;
+
+    private OffHeapAggMap partials; // null when in-mapper combining is disabled
+    private int maxKeys;
+    private boolean sampling;
+    private String stratumTag;      // "|n|N|stratum" of the split in sampling mode
+
+    /**
+     * Enables in-mapper combining and sampling if requested by the configuration.
+     *
+     * @param ctx   Hadoop mapper context
+     * @throws IOException if sampling is on but the split does not come from a sampled input format
+     */
+    @Override
+    protected void setup(Context ctx) throws IOException
+    {
+        sampling = ctx.getConfiguration().getDouble(SAMPLE_FRACTION, 1.0) < 1.0;
+        if (sampling)
+        {
+            if (!(ctx.getInputSplit() instanceof StratifiedSplit))
+                throw new IOException("Sampling mode needs the splits of common.SampledTextInputFormat, got " + ctx.getInputSplit().getClass().getName());
+            stratumTag = "|" + SplitSampler.tag((StratifiedSplit) ctx.getInputSplit());
+        }
+        maxKeys = Math.max(1, ctx.getConfiguration().getInt(INMAPPER_MAX_KEYS, 100000));
+
+        // Sampling needs the split totals (region x model keys: a few hundred at most), so it always combines
+        if (sampling || ctx.getConfiguration().getBoolean(INMAPPER_COMBINE, false))
+            partials = new OffHeapAggMap(Math.min(maxKeys, 4096), 64 * 1024);
+    }
+
     /**
      * Parses a CSV row and emits ("region\tmodel", "1|vol|price|isHigh").
      *
@@ -44,47 +93,200 @@ public class Mapper1 extends Mapper<LongWritable, Text, Text, Text>
     @Override
     protected void map(LongWritable key, Text value, Context ctx) throws IOException, InterruptedException
     {
-        String line = value.toString().trim();
-        if (line.isEmpty())
+        // Works on the Text bytes: same rules as trim() / split(",") / toLowerCase() on the decoded line,
+        // without per-row Strings
+        byte[] b = value.getBytes();
+        int s = 0, e = value.getLength();
+        while (s < e && (b[s] & 0xff) <= ' ')
+            s++;
+        while (e > s && (b[e - 1] & 0xff) <= ' ')
+            e--;
+        if (s == e)
             return;
 
-        String[] f = line.split(",", -1);
-        if (f.length < 11 || "Model".equalsIgnoreCase(f[0]))
+        int fields = 1;
+        from[0] = s;
+        for (int i = s; i < e && fields <= 11; i++)
+        {
+            if (b[i] == ',')
+            {
+                to[fields - 1] = i;
+                if (fields < 11)
+                    from[fields] = i + 1;
+                fields++;
+            }
+        }
+        if (fields < 11)
             return;
+        if (fields == 11)
+            to[10] = e;
 
-        String model  = f[0].trim().toLowerCase();
-        String region = f[2].trim().toLowerCase();
-        String priceS = f[8].trim();
-        String volS   = f[9].trim();
-        String cls    = f[10].trim();
+        if (equalsIgnoreCase(b, from[0], to[0], "model"))
+            return;
 
-        if (region.isEmpty() || model.isEmpty())
+        if (!buildKey(b))
             return;
 
-        int volume = safeInt(volS);
-        int price  = safeInt(priceS);
-        int isHigh = "high".equalsIgnoreCase(cls) ? 1 : 0;
+        int volume = parseInt(b, 9);
+        int price  = parseInt(b, 8);
+        int isHigh = equalsIgnoreCase(b, trimStart(b, 10), trimEnd(b, 10), "high") ? 1 : 0;
+
+        if (partials != null)
+        {
+            partials.merge(keyBuf, 0, keyLen, 1, volume, price, isHigh);
+            if (!sampling && partials.size() >= maxKeys)
+                flush(ctx);
+            return;
+        }
 
-        outKey.set(region + "\t" + model);
+        outKey.set(keyBuf, 0, keyLen);
         outVal.set("1|" + volume + "|" + price + "|" + isHigh);
         ctx.write(outKey, outVal);
     }
 
     /**
-     * Parses a string as integer with fallback to 0.
+     * Writes "region \t model" (trimmed, lower case) into {@code keyBuf}.
      *
-     * @param s string to parse
-     * @return integer value or 0 if parsing fails
+     * @param b line bytes
+     * @return false if region or model is empty
      */
-    private int safeInt(String s)
+    private boolean buildKey(byte[] b)
     {
-        try
+        int rs = trimStart(b, 2), re = trimEnd(b, 2);
+        int ms = trimStart(b, 0), me = trimEnd(b, 0);
+        if (rs == re || ms == me)
+            return false;
+
+        int len = (re - rs) + 1 + (me - ms);
+        if (len > keyBuf.length)
+            keyBuf = new byte[Math.max(len, keyBuf.length * 2)];
+
+        keyLen = 0;
+        boolean ascii = appendLower(b, rs, re);
+        keyBuf[keyLen++] = '\t';
+        ascii &= appendLower(b, ms, me);
+
+        if (!ascii)
         {
-            return Integer.parseInt(s);
+            // Non-ASCII names: String.toLowerCase() rules (rare, allocates)
+            String region = new String(b, rs, re - rs, StandardCharsets.UTF_8).toLowerCase();
+            String model  = new String(b, ms, me - ms, StandardCharsets.UTF_8).toLowerCase();
+            byte[] k = (region + "\t" + model).getBytes(StandardCharsets.UTF_8);
+            if (k.length > keyBuf.length)
+                keyBuf = new byte[k.length];
+            System.arraycopy(k, 0, keyBuf, 0, k.length);
+            keyLen = k.length;
         }
-        catch (Exception e)
+        return true;
+    }
+
+    private boolean appendLower(byte[] b, int s, int e)
+    {
+        boolean ascii = true;
+        for (int i = s; i < e; i++)
         {
+            byte c = b[i];
+            ascii &= c >= 0;
+            keyBuf[keyLen++] = (c >= 'A' && c <= 'Z') ? (byte) (c + ('a' - 'A')) : c;
+        }
+        return ascii;
+    }
+
+    private int trimStart(byte[] b, int field)
+    {
+        int i = from[field];
+        while (i < to[field] && (b[i] & 0xff) <= ' ')
+            i++;
+        return i;
+    }
+
+    private int trimEnd(byte[] b, int field)
+    {
+        int i = to[field];
+        while (i > from[field] && (b[i - 1] & 0xff) <= ' ')
+            i--;
+        return i;
+    }
+
+    /**
+     * ASCII case-insensitive comparison of b[s, e) with a lower-case literal.
+     */
+    private static boolean equalsIgnoreCase(byte[] b, int s, int e, String lower)
+    {
+        if (e - s != lower.length())
+            return false;
+
+        for (int i = 0; i < lower.length(); i++)
+        {
+            int c = b[s + i];
+            if (c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+            if (c != lower.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses a trimmed field as integer with fallback to 0 (same results as Integer.parseInt on ASCII input).
+     *
+     * @param b     line bytes
+     * @param field field index
+     * @return integer value or 0 if parsing fails
+     */
+    private int parseInt(byte[] b, int field)
+    {
+        int i = trimStart(b, field), e = trimEnd(b, field);
+        if (i == e)
             return 0;
+
+        boolean neg = b[i] == '-';
+        if ((neg || b[i] == '+') && ++i == e)
+            return 0;
+
+        long v = 0;
+        for (; i < e; i++)
+        {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9)
+                return 0;
+
+            v = v * 10 + d;
+            if (v > 1L + Integer.MAX_VALUE)
+                return 0;
         }
+        v = neg ? -v : v;
+        return (v > Integer.MAX_VALUE) ? 0 : (int) v;
+    }
+
+    /**
+     * Emits what is left in the in-mapper aggregation state.
+     *
+     * @param ctx   Hadoop context
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Override
+    protected void cleanup(Context ctx) throws IOException, InterruptedException
+    {
+        if (partials != null)
+            flush(ctx);
+    }
+
+    /**
+     * Emits every partial sum as ("region\tmodel", "c|vol|prc|hi"), plus "|vol^2|n|N|stratum" when sampling, and empties the map.
+     *
+     * @param ctx   Hadoop context
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void flush(Context ctx) throws IOException, InterruptedException
+    {
+        partials.forEach((k, len, c, vol, prc, hi) -> {
+            outKey.set(k, 0, len);
+            outVal.set(c + "|" + vol + "|" + prc + "|" + hi + (sampling ? "|" + (double) vol * vol + stratumTag : ""));
+            ctx.write(outKey, outVal);
+        });
+        partials.clear();
     }
-}
\ No newline at end of file
+}
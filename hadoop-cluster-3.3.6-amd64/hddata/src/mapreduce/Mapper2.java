@@ -25,10 +25,10 @@ import java.io.IOException;
  * - Key = region
  * - Value = sumVolume
  */
-public class Mapper2 extends Mapper<LongWritable, Text, Text, IntWritable>
+public class Mapper2 extends Mapper<LongWritable, Text, Text, LongWritable>
 {
     private final Text outKey = new Text();
-    private final IntWritable outVal = new IntWritable();
+    private final LongWritable outVal = new LongWritable();
 
     /**
      * Reads a Job 1 output line, extracts the region and its volume,
@@ -53,23 +53,23 @@ public class Mapper2 extends Mapper<LongWritable, Text, Text, IntWritable>
         if (p.length < 2)
             return;
 
-        int sumVolume = safeInt(p[1]);
+        long sumVolume = safeLong(p[1]);
         outKey.set(region);
         outVal.set(sumVolume);
         ctx.write(outKey, outVal);
     }
 
     /**
-     * Parses a string as integer with fallback to 0.
+     * Parses a string as long with fallback to 0.
      *
      * @param s string to parse
-     * @return integer value or 0 if parsing fails
+     * @return long value or 0 if parsing fails
      */
-    private int safeInt(String s)
+    private long safeLong(String s)
     {
         try
         {
-            return Integer.parseInt(s);
+            return Long.parseLong(s);
         }
         catch(Exception e)
         {
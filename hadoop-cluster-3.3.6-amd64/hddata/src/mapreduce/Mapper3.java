@@ -15,29 +15,35 @@
  */
 package mapreduce;
 
+import common.SplitSampler;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.*;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.*;
 import org.apache.hadoop.mapreduce.Mapper;
-import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
 
 /**
  * Job 3 Mapper:
- * - Loads region totals (Job 2) in setup() using "step2.totals.path"
+ * - Loads region totals (Job 2) in setup() using "step2.totals.path", part files in parallel
  * - Reads Job 1 lines, computes share%, avgPrice, highShare
- * - Key = region
+ * - Key = (region, sumVol) composite key for secondary sort
  * - Value = "model \t sumVol \t sharePct \t avgPrice \t highShare"
+ * - Sampling mode ("sample.fraction" < 1): Job 1 already wrote estimated totals with the variance of the volume
+ *   and its degrees of freedom as 5th and 6th components (see {@link Reducer1}); a 6th column "volHalfWidth" holds
+ *   the half-width of the volume's confidence interval at the level of z = "sample.confidence.z"
  */
-public class Mapper3 extends Mapper<LongWritable, Text, Text, Text>
+public class Mapper3 extends Mapper<LongWritable, Text, RegionVolumeKey, Text>
 {
-    private final Map<String,Integer> regionTotals = new HashMap<>();
-    private final Text outKey = new Text();
+    public static final String SAMPLE_Z = "sample.confidence.z";
+
+    private double fraction;    // 1.0 = exact run
+    private double z;
+    private final OffHeapAggMap regionTotals = new OffHeapAggMap(64, 1024); // region -> total volume (field 0)
+    private final RegionVolumeKey outKey = new RegionVolumeKey();
     private final Text outVal = new Text();
 
     /**
-     * Loads region totals from the output of Job 2.
+     * Loads region totals from the output of Job 2 (see {@link RegionTotalsLoader}).
      *
      * @param ctx   Hadoop mapper context used to access configuration and filesystem
      * @throws IOException if reading the totals fails
@@ -46,43 +52,18 @@ public class Mapper3 extends Mapper<LongWritable, Text, Text, Text>
     protected void setup(Context ctx) throws IOException
     {
         Configuration conf = ctx.getConfiguration();
+        fraction = conf.getDouble(Mapper1.SAMPLE_FRACTION, 1.0);
+        z = conf.getDouble(SAMPLE_Z, 1.96);
+
         String totalsPath = conf.get("step2.totals.path");
         if (totalsPath == null)
             return; // No totals available; shares will be 0
 
-        FileSystem fs = FileSystem.get(conf);
-        Path dir = new Path(totalsPath);
-        RemoteIterator<LocatedFileStatus> it = fs.listFiles(dir, false);
-
-        while (it.hasNext())
-        {
-            Path p = it.next().getPath();
-            if (!p.getName().startsWith("part-"))
-                continue;
-
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(p))))
-            {
-                String line;
-
-                // Each line: region \t regionTotalVolume
-                while ((line = br.readLine()) != null)
-                {
-                    String[] kv = line.split("\\t");
-                    if (kv.length >= 2)
-                    {
-                        try
-                        {
-                            regionTotals.put(kv[0], Integer.parseInt(kv[1]));
-                        }
-                        catch (Exception ex) {} // Ignore malformed totals; acts as if region had no total
-                    }
-                }
-            }
-        }
+        RegionTotalsLoader.load(conf, new Path(totalsPath), regionTotals);
     }
 
     /**
-     * Computes per-model metrics and emits (region, "model\t...metrics...").
+     * Computes per-model metrics and emits ((region, sumVol), "model\t...metrics...").
      *
      * @param key       byte offset of the line in the input split (unused)
      * @param value     a line in the format "region \t model \t count|sumVolume|sumPrice|highCount"
@@ -103,38 +84,86 @@ public class Mapper3 extends Mapper<LongWritable, Text, Text, Text>
         if (p.length < 4)
             return;
 
-        int count   = safeInt(p[0]);
-        int sumVol  = safeInt(p[1]);
-        int sumPrice= safeInt(p[2]);
-        int high    = safeInt(p[3]);
+        long count   = safeLong(p[0]);
+        long sumVol  = safeLong(p[1]);
+        long sumPrice= safeLong(p[2]);
+        long high    = safeLong(p[3]);
 
-        Integer tot = regionTotals.get(region);
-        double share = (tot != null && tot > 0) ? (100.0 * sumVol / tot) : 0.0;
+        long tot = regionTotals.get(value.getBytes(), 0, regionLength(value), 0, 0L);
+        double share = (tot > 0) ? (100.0 * sumVol / tot) : 0.0;
         double avgPrice  = (count > 0) ? ((double) sumPrice / count) : 0.0;
         double highShare = (count > 0) ? (100.0 * high / count) : 0.0;
 
-        outKey.set(region);
-        outVal.set(
-                model + "\t"
-                + sumVol + "\t"
-                + String.format(java.util.Locale.US, "%.4f", share) + "\t"
+        outKey.set(region, sumVol);
+
+        String metrics = String.format(java.util.Locale.US, "%.4f", share) + "\t"
                 + String.format(java.util.Locale.US, "%.2f", avgPrice) + "\t"
-                + String.format(java.util.Locale.US, "%.2f", highShare)
-        );
+                + String.format(java.util.Locale.US, "%.2f", highShare);
+
+        if (fraction < 1.0)
+        {
+            // Stratified split sampling: p[4] = variance of the estimated sumVol, p[5] = its degrees of freedom
+            double variance = (p.length >= 5) ? safeDouble(p[4]) : 0.0;
+            double df = (p.length >= 6) ? safeDouble(p[5]) : Double.POSITIVE_INFINITY;
+            double halfWidth = SplitSampler.halfWidth(variance, df, z);
+
+            outVal.set(model + "\t" + sumVol + "\t" + metrics + "\t" + String.format(java.util.Locale.US, "%.0f", halfWidth));
+        }
+        else
+        {
+            outVal.set(model + "\t" + sumVol + "\t" + metrics);
+        }
         ctx.write(outKey, outVal);
     }
 
     /**
-     * Parses a string as integer with fallback to 0.
+     * Length in bytes of the region column (up to the first tab, trailing blanks excluded),
+     * so the totals lookup reads the key straight from the Text buffer without copying it.
+     *
+     * @param line  a Job 1 output line
+     * @return region length in bytes
+     */
+    private static int regionLength(Text line)
+    {
+        byte[] b = line.getBytes();
+        int n = line.getLength();
+        int end = 0;
+        while (end < n && b[end] != '\t')
+            end++;
+        while (end > 0 && (b[end - 1] & 0xff) <= ' ')
+            end--;
+        return end;
+    }
+
+    /**
+     * Parses a string as double with fallback to 0.
+     *
+     * @param s string to parse
+     * @return double value or 0 if parsing fails
+     */
+    private double safeDouble(String s)
+    {
+        try
+        {
+            return Double.parseDouble(s);
+        }
+        catch(Exception e)
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * Parses a string as long with fallback to 0.
      *
      * @param s string to parse
-     * @return integer value or 0 if parsing fails
+     * @return long value or 0 if parsing fails
      */
-    private int safeInt(String s)
+    private long safeLong(String s)
     {
         try
         {
-            return Integer.parseInt(s);
+            return Long.parseLong(s);
         }
         catch(Exception e)
         {
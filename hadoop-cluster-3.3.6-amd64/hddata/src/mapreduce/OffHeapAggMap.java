@@ -0,0 +1,303 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package mapreduce;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Off-heap aggregation map:
+ * - Open addressing (linear probing) over a direct ByteBuffer, no boxed keys or values on the heap
+ * - Each slot stores the 4 long accumulators inline ("count|sumVolume|sumPrice|highCount" of Combiner1/Reducer1)
+ * - Keys are byte slices (UTF-8) copied into an off-heap arena with bulk transfers
+ * - At most 2^25 slots (2^24 keys at load factor 0.5) and a 2 GiB arena, the limits of an int-indexed ByteBuffer
+ * - Not thread-safe: callers sharing an instance must synchronize
+ */
+public class OffHeapAggMap
+{
+    public static final int FIELDS = 4;
+
+    // Slot layout: hash(int) | keyLen(int) | keyOff(long) | acc[0..3](long)
+    private static final int SLOT = 16 + 8 * FIELDS;
+    private static final int HASH = 0, KLEN = 4, KOFF = 8, ACC = 16;
+    private static final int MAX_CAPACITY = 1 << 25; // 2^25 * SLOT still fits in an int
+
+    private ByteBuffer table;
+    private ByteBuffer arena;
+    private ByteBuffer arenaView;   // duplicate of arena for relative bulk get/put
+    private byte[] scratch = new byte[64];
+    private int arenaUsed;
+    private int capacity;   // number of slots, always a power of two
+    private int size;
+
+    /**
+     * Visitor used by {@link #forEach(Visitor)}; {@code key} is reused across calls.
+     * Declares the Hadoop context exceptions so visitors can emit records directly.
+     */
+    public interface Visitor
+    {
+        void accept(byte[] key, int len, long a0, long a1, long a2, long a3) throws IOException, InterruptedException;
+    }
+
+    public OffHeapAggMap()
+    {
+        this(1024, 16 * 1024);
+    }
+
+    /**
+     * @param expectedKeys  initial number of keys to size the table for
+     * @param arenaBytes    initial arena size in bytes
+     */
+    public OffHeapAggMap(int expectedKeys, int arenaBytes)
+    {
+        if (expectedKeys > MAX_CAPACITY >>> 1)
+            throw new IllegalArgumentException("OffHeapAggMap holds at most " + (MAX_CAPACITY >>> 1) + " keys");
+
+        capacity = Integer.highestOneBit(Math.max(16, expectedKeys * 2 - 1)) << 1;
+        table = allocate(capacity * SLOT);
+        arena = allocate(Math.max(64, arenaBytes));
+        arenaView = arena.duplicate();
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Adds the 4 components to the accumulators of {@code key}, inserting it at zero if absent.
+     *
+     * @param k     key bytes
+     * @param off   key offset
+     * @param len   key length
+     */
+    public void merge(byte[] k, int off, int len, long a0, long a1, long a2, long a3)
+    {
+        int base = slotFor(k, off, len, true);
+        table.putLong(base + ACC,      table.getLong(base + ACC)      + a0);
+        table.putLong(base + ACC + 8,  table.getLong(base + ACC + 8)  + a1);
+        table.putLong(base + ACC + 16, table.getLong(base + ACC + 16) + a2);
+        table.putLong(base + ACC + 24, table.getLong(base + ACC + 24) + a3);
+    }
+
+    public void merge(String key, long a0, long a1, long a2, long a3)
+    {
+        byte[] b = key.getBytes(StandardCharsets.UTF_8);
+        merge(b, 0, b.length, a0, a1, a2, a3);
+    }
+
+    /**
+     * Overwrites one accumulator of {@code key}, inserting it at zero if absent.
+     *
+     * @param field accumulator index in [0, 4)
+     * @param value new value
+     */
+    public void set(byte[] k, int off, int len, int field, long value)
+    {
+        int base = slotFor(k, off, len, true);
+        table.putLong(base + ACC + 8 * field, value);
+    }
+
+    public void set(String key, int field, long value)
+    {
+        byte[] b = key.getBytes(StandardCharsets.UTF_8);
+        set(b, 0, b.length, field, value);
+    }
+
+    /**
+     * Reads one accumulator of {@code key}.
+     *
+     * @param field accumulator index in [0, 4)
+     * @param dflt  value returned if the key is absent
+     * @return accumulator value or {@code dflt}
+     */
+    public long get(byte[] k, int off, int len, int field, long dflt)
+    {
+        int base = slotFor(k, off, len, false);
+        return (base < 0) ? dflt : table.getLong(base + ACC + 8 * field);
+    }
+
+    public long get(String key, int field, long dflt)
+    {
+        byte[] b = key.getBytes(StandardCharsets.UTF_8);
+        return get(b, 0, b.length, field, dflt);
+    }
+
+    /**
+     * Visits every entry in table order.
+     *
+     * @param v visitor
+     * @throws IOException if the visitor fails
+     * @throws InterruptedException if the visitor is interrupted
+     */
+    public void forEach(Visitor v) throws IOException, InterruptedException
+    {
+        byte[] buf = new byte[64];
+        for (int i = 0; i < capacity; i++)
+        {
+            int base = i * SLOT;
+            if (table.getInt(base + HASH) == 0)
+                continue;
+
+            int len = table.getInt(base + KLEN);
+            if (len > buf.length)
+                buf = new byte[Math.max(len, buf.length * 2)];
+            arenaView.position((int) table.getLong(base + KOFF));
+            arenaView.get(buf, 0, len);
+
+            v.accept(buf, len,
+                    table.getLong(base + ACC), table.getLong(base + ACC + 8),
+                    table.getLong(base + ACC + 16), table.getLong(base + ACC + 24));
+        }
+    }
+
+    /**
+     * Removes every entry, keeping the allocated table and arena.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < capacity * SLOT; i += 8)
+            table.putLong(i, 0L);
+        arenaUsed = 0;
+        size = 0;
+    }
+
+    /**
+     * Finds the slot of a key.
+     *
+     * @param insert whether to insert the key if absent
+     * @return byte offset of the slot in the table, or -1 if absent and not inserted
+     */
+    private int slotFor(byte[] k, int off, int len, boolean insert)
+    {
+        int h = hash(k, off, len);
+        int mask = capacity - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask)
+        {
+            int base = i * SLOT;
+            int sh = table.getInt(base + HASH);
+            if (sh == 0)
+            {
+                if (!insert)
+                    return -1;
+
+                if (size + 1 > capacity >>> 1)
+                {
+                    grow();
+                    return slotFor(k, off, len, true);
+                }
+
+                table.putInt(base + HASH, h);
+                table.putInt(base + KLEN, len);
+                table.putLong(base + KOFF, copyKey(k, off, len));
+                size++;
+                return base;
+            }
+
+            if (sh == h && table.getInt(base + KLEN) == len && keyEquals((int) table.getLong(base + KOFF), k, off, len))
+                return base;
+        }
+    }
+
+    private boolean keyEquals(int koff, byte[] k, int off, int len)
+    {
+        if (len > scratch.length)
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        arenaView.position(koff);
+        arenaView.get(scratch, 0, len);
+
+        for (int j = 0; j < len; j++)
+        {
+            if (scratch[j] != k[off + j])
+                return false;
+        }
+        return true;
+    }
+
+    private long copyKey(byte[] k, int off, int len)
+    {
+        long need = (long) arenaUsed + len;
+        if (need > arena.capacity())
+        {
+            if (need > Integer.MAX_VALUE)
+                throw new IllegalStateException("OffHeapAggMap key arena is full (" + arenaUsed + " bytes)");
+
+            ByteBuffer bigger = allocate((int) Math.min(Integer.MAX_VALUE, Math.max(arena.capacity() * 2L, need)));
+            ByteBuffer used = arena.duplicate();
+            used.limit(arenaUsed);
+            used.position(0);
+            bigger.put(used);
+            arena = bigger;
+            arenaView = arena.duplicate();
+        }
+
+        int at = arenaUsed;
+        arenaView.position(at);
+        arenaView.put(k, off, len);
+        arenaUsed += len;
+        return at;
+    }
+
+    /**
+     * Doubles the table and re-inserts every slot (keys stay where they are in the arena).
+     */
+    private void grow()
+    {
+        if (capacity >= MAX_CAPACITY)
+            throw new IllegalStateException("OffHeapAggMap is full (" + size + " keys)");
+
+        ByteBuffer old = table;
+        int oldCap = capacity;
+
+        capacity = oldCap << 1;
+        table = allocate(capacity * SLOT);
+        int mask = capacity - 1;
+
+        for (int i = 0; i < oldCap; i++)
+        {
+            int src = i * SLOT;
+            int h = old.getInt(src + HASH);
+            if (h == 0)
+                continue;
+
+            int j = h & mask;
+            while (table.getInt(j * SLOT + HASH) != 0)
+                j = (j + 1) & mask;
+
+            int dst = j * SLOT;
+            for (int b = 0; b < SLOT; b += 8)
+                table.putLong(dst + b, old.getLong(src + b));
+        }
+    }
+
+    // FNV-1a with a final mix; 0 is reserved for empty slots
+    private static int hash(byte[] k, int off, int len)
+    {
+        int h = 0x811C9DC5;
+        for (int j = off; j < off + len; j++)
+            h = (h ^ (k[j] & 0xff)) * 0x01000193;
+
+        h ^= h >>> 16;
+        return (h == 0) ? 1 : h;
+    }
+
+    private static ByteBuffer allocate(int bytes)
+    {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+}
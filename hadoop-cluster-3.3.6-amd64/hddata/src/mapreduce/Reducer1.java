@@ -23,13 +23,15 @@ import java.io.IOException;
  * Job 1 Reducer:
  * - Final aggregate per (region, model)
  * - Outputs: key = "region \t model", value = "count|sumVolume|sumPrice|highCount"
+ * - Sampling mode: the per-stratum sums are expanded to estimates of the whole input (see {@link StratumSums}),
+ *   value = "count|sumVolume|sumPrice|highCount|volumeVariance|degreesOfFreedom", so Job 2 and Job 3 read estimated totals
  */
 public class Reducer1 extends Reducer<Text, Text, Text, Text>
 {
     private final Text outVal = new Text();
 
     /**
-     * Final aggregation step: sums all four integer components.
+     * Final aggregation step: sums all four components.
      *
      * @param key    "region\tmodel"
      * @param values iterable of "c|vol|prc|hi" partial sums
@@ -40,34 +42,39 @@ public class Reducer1 extends Reducer<Text, Text, Text, Text>
     @Override
     protected void reduce(Text key, Iterable<Text> values, Context ctx) throws IOException, InterruptedException
     {
-        int c=0, vol=0, prc=0, hi=0;
+        long c=0, vol=0, prc=0, hi=0;
+        StratumSums strata = new StratumSums();
         for (Text t : values)
         {
-            String[] p = t.toString().split("\\|");
-            if (p.length >= 4)
+            String[] p = t.toString().split("\\|", StratumSums.FIELDS);
+            if (p.length == StratumSums.FIELDS)
             {
-                c   += safeInt(p[0]);
-                vol += safeInt(p[1]);
-                prc += safeInt(p[2]);
-                hi  += safeInt(p[3]);
+                strata.add(p);
+            }
+            else if (p.length >= 4)
+            {
+                c   += safeLong(p[0]);
+                vol += safeLong(p[1]);
+                prc += safeLong(p[2]);
+                hi  += safeLong(p[3]);
             }
         }
 
-        outVal.set(c + "|" + vol + "|" + prc + "|" + hi);
+        outVal.set(strata.isEmpty() ? c + "|" + vol + "|" + prc + "|" + hi : strata.estimate());
         ctx.write(key, outVal);
     }
 
     /**
-     * Parses a string as integer with fallback to 0.
+     * Parses a string as long with fallback to 0.
      *
      * @param s string to parse
-     * @return integer value or 0 if parsing fails
+     * @return long value or 0 if parsing fails
      */
-    private int safeInt(String s)
+    private long safeLong(String s)
     {
         try
         {
-            return Integer.parseInt(s);
+            return Long.parseLong(s);
         }
         catch(Exception e)
         {
@@ -24,9 +24,9 @@ import java.io.IOException;
  * - Sums region volumes
  * - Outputs: region \t regionTotalVolume
  */
-public class Reducer2 extends Reducer<Text, IntWritable, Text, IntWritable>
+public class Reducer2 extends Reducer<Text, LongWritable, Text, LongWritable>
 {
-    private final IntWritable outVal = new IntWritable();
+    private final LongWritable outVal = new LongWritable();
 
     /**
      * Sums all volumes for the given region and emits the total.
@@ -38,11 +38,11 @@ public class Reducer2 extends Reducer<Text, IntWritable, Text, IntWritable>
      * @throws InterruptedException
      */
     @Override
-    protected void reduce(Text region, Iterable<IntWritable> vals, Context ctx) throws IOException, InterruptedException
+    protected void reduce(Text region, Iterable<LongWritable> vals, Context ctx) throws IOException, InterruptedException
     {
-        int total = 0;
+        long total = 0;
 
-        for (IntWritable v : vals)
+        for (LongWritable v : vals)
             total += v.get();
 
         outVal.set(total);
@@ -18,17 +18,21 @@ package mapreduce;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Job 3 Reducer:
- * - Sorts items by sumVol in descending order and emits Top-K per region
+ * - Receives items already sorted by sumVol descending (secondary sort on {@link RegionVolumeKey})
+ * - Streams the first K values per region and stops, using O(K) memory and no in-reducer sort
  * - Output: region \t model \t sumVol \t sharePct \t avgPrice \t highShare
+ * - Sampling mode output (provisional Top-K): ... \t highShare \t volHalfWidth \t confident|provisional,
+ *   a rank is "confident" when its volume interval does not overlap the intervals of the ranks above and below
  */
-public class Reducer3 extends Reducer<Text, Text, Text, Text>
+public class Reducer3 extends Reducer<RegionVolumeKey, Text, Text, Text>
 {
     private int topK; // Number of top items to emit per region (read from "top.k")
+    private boolean sampling;
+    private final Text outKey = new Text();
+    private final Text outVal = new Text();
 
     /**
      * Reads {@code top.k} from the configuration (defaults to 5).
@@ -39,42 +43,95 @@ public class Reducer3 extends Reducer<Text, Text, Text, Text>
     protected void setup(Context ctx)
     {
         topK = ctx.getConfiguration().getInt("top.k", 5);
+        sampling = ctx.getConfiguration().getDouble(Mapper1.SAMPLE_FRACTION, 1.0) < 1.0;
     }
 
     /**
-     * Sorts items by {@code sumVol} descending and emits Top-K rows for the region.
+     * Emits the first Top-K rows of the region; the shuffle has already ordered them by {@code sumVol} descending.
      *
-     * @param region    region name
+     * @param key       composite key, grouped by region
      * @param values    iterable of lines: "model \t sumVol \t sharePct \t avgPrice \t highShare"
      * @param ctx       Hadoop context
      * @throws IOException
      * @throws InterruptedException
      */
     @Override
-    protected void reduce(Text region, Iterable<Text> values, Context ctx) throws IOException, InterruptedException
+    protected void reduce(RegionVolumeKey key, Iterable<Text> values, Context ctx) throws IOException, InterruptedException
     {
-        List<String[]> rows = new ArrayList<>();
+        // Region is the same for the whole group, copy it before iterating (the key is refilled per value)
+        outKey.set(key.getRegion());
 
-        // Collect parsed rows for this region
-        for (Text t : values)
+        if (sampling)
         {
-            String[] p = t.toString().split("\\t");
-            if (p.length >= 5)
-                rows.add(p);
+            reduceSampled(values, ctx);
+            return;
         }
 
-        // Sort by sumVol descending
-        rows.sort((a, b) -> Integer.compare(Integer.parseInt(b[1]), Integer.parseInt(a[1])));
+        int k = 0;
+        for (Text t : values)
+        {
+            if (k >= topK)
+                break;
+
+            // Skip malformed rows without consuming a rank
+            if (t.toString().split("\\t").length < 5)
+                continue;
+
+            // Output preserves the original metric order
+            ctx.write(outKey, t);
+            k++;
+        }
+    }
 
-        // Emit Top-K rows
+    /**
+     * Sampling mode: emits the provisional Top-K with a confidence flag per rank.
+     * Reads one row past the K-th to compare the last rank with its successor; still O(1) memory.
+     *
+     * @param values    iterable of lines: "model \t estVol \t sharePct \t avgPrice \t highShare \t volHalfWidth"
+     * @param ctx       Hadoop context
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void reduceSampled(Iterable<Text> values, Context ctx) throws IOException, InterruptedException
+    {
+        String pending = null;                      // row waiting for its successor
+        double pendingLo = 0, pendingHi = 0;
+        double aboveLo = Double.POSITIVE_INFINITY;  // lower bound of the rank above the pending one
         int k = 0;
-        for (String[] r : rows)
+
+        for (Text t : values)
         {
+            String row = t.toString();
+            String[] p = row.split("\\t");
+            if (p.length < 6)
+                continue;
+
+            double est = Double.parseDouble(p[1]);
+            double hw = Double.parseDouble(p[5]);
+
+            if (pending != null)
+            {
+                emitSampled(ctx, pending, pendingLo > est + hw && pendingHi < aboveLo);
+                aboveLo = pendingLo;
+                pending = null;
+            }
+
             if (k++ >= topK)
                 break;
 
-            // Output preserves the original metric order
-            ctx.write(region, new Text(r[0] + "\t" + r[1] + "\t" + r[2] + "\t" + r[3] + "\t" + r[4]));
+            pending = row;
+            pendingLo = est - hw;
+            pendingHi = est + hw;
         }
+
+        // Last rank of a region with fewer than K+1 models: nothing below it
+        if (pending != null)
+            emitSampled(ctx, pending, pendingHi < aboveLo);
+    }
+
+    private void emitSampled(Context ctx, String row, boolean confident) throws IOException, InterruptedException
+    {
+        outVal.set(row + "\t" + (confident ? "confident" : "provisional"));
+        ctx.write(outKey, outVal);
     }
 }
\ No newline at end of file
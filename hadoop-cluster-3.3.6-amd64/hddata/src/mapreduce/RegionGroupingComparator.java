@@ -0,0 +1,53 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package mapreduce;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Job 3 Grouping Comparator:
+ * - Groups {@link RegionVolumeKey} by region only
+ * - One reduce() call per region, values already sorted by sumVol descending
+ * - Compares the serialized region bytes directly (see {@link RegionVolumeKey.Comparator})
+ */
+public class RegionGroupingComparator extends WritableComparator
+{
+    public RegionGroupingComparator()
+    {
+        super(RegionVolumeKey.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2)
+    {
+        return RegionVolumeKey.Comparator.compareRegions(b1, s1, b2, s2);
+    }
+
+    /**
+     * Compares the region part only.
+     *
+     * @param a first key
+     * @param b second key
+     * @return comparison result on region
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public int compare(WritableComparable a, WritableComparable b)
+    {
+        return ((RegionVolumeKey) a).getRegion().compareTo(((RegionVolumeKey) b).getRegion());
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package mapreduce;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/**
+ * Job 3 Partitioner:
+ * - Partitions on the region part of {@link RegionVolumeKey} only
+ * - Keeps every model of a region on the same reducer
+ */
+public class RegionPartitioner extends Partitioner<RegionVolumeKey, Text>
+{
+    /**
+     * Hashes the region only, ignoring sumVol.
+     *
+     * @param key           composite key (region, sumVol)
+     * @param value         map output value (unused)
+     * @param numPartitions number of reduce tasks
+     * @return partition index in [0, numPartitions)
+     */
+    @Override
+    public int getPartition(RegionVolumeKey key, Text value, int numPartitions)
+    {
+        return (key.getRegion().hashCode() & Integer.MAX_VALUE) % numPartitions;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package mapreduce;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.*;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Job 3 side-input loader:
+ * - Lists the "part-" files of Job 2 output ("step2.totals.path")
+ * - Opens and parses them concurrently on a bounded thread pool into an {@link OffHeapAggMap} (total in field 0)
+ * - Concurrency and timeout are read from "step2.totals.threads" and "step2.totals.timeout.ms"
+ */
+public class RegionTotalsLoader
+{
+    public static final String THREADS = "step2.totals.threads";
+    public static final String TIMEOUT_MS = "step2.totals.timeout.ms";
+
+    private RegionTotalsLoader() {}
+
+    /**
+     * Loads every "region \t regionTotalVolume" line found under {@code dir} into {@code totals}.
+     *
+     * @param conf      job configuration (filesystem, concurrency, timeout)
+     * @param dir       Job 2 output directory
+     * @param totals    map filled with region totals (field 0)
+     * @throws IOException if a part file cannot be read or loading exceeds the timeout
+     */
+    public static void load(Configuration conf, Path dir, OffHeapAggMap totals) throws IOException
+    {
+        final FileSystem fs = dir.getFileSystem(conf);
+        List<Path> parts = new ArrayList<>();
+        RemoteIterator<LocatedFileStatus> it = fs.listFiles(dir, false);
+        while (it.hasNext())
+        {
+            Path p = it.next().getPath();
+            if (p.getName().startsWith("part-"))
+                parts.add(p);
+        }
+
+        if (parts.isEmpty())
+            return;
+
+        int threads = Math.max(1, Math.min(conf.getInt(THREADS, 8), parts.size()));
+        long timeoutMs = conf.getLong(TIMEOUT_MS, 60000L);
+
+        // Single part file (the usual 1-reducer case): no pool needed
+        if (threads == 1)
+        {
+            for (Path p : parts)
+                parse(fs, p, totals);
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "totals-loader");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try
+        {
+            List<Callable<Void>> tasks = new ArrayList<>(parts.size());
+            for (final Path p : parts)
+            {
+                tasks.add(() -> {
+                    parse(fs, p, totals);
+                    return null;
+                });
+            }
+
+            List<Future<Void>> done = pool.invokeAll(tasks, timeoutMs, TimeUnit.MILLISECONDS);
+            for (Future<Void> f : done)
+            {
+                try
+                {
+                    f.get();
+                }
+                catch (CancellationException e)
+                {
+                    throw new IOException("Timed out after " + timeoutMs + " ms loading region totals from " + dir);
+                }
+                catch (ExecutionException e)
+                {
+                    Throwable c = e.getCause();
+                    throw (c instanceof IOException) ? (IOException) c : new IOException(c);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading region totals from " + dir);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses one Job 2 part file and publishes each total to the shared map under its lock.
+     * Job 2 writes one line per region, so the lock is taken a handful of times per file.
+     *
+     * @param fs        filesystem holding the file
+     * @param p         part file
+     * @param totals    map to fill
+     * @throws IOException if the file cannot be read
+     */
+    private static void parse(FileSystem fs, Path p, OffHeapAggMap totals) throws IOException
+    {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(p))))
+        {
+            String line;
+
+            // Each line: region \t regionTotalVolume
+            while ((line = br.readLine()) != null)
+            {
+                int tab = line.indexOf('\t');
+                if (tab < 0)
+                    continue;
+
+                long total;
+                try
+                {
+                    int end = line.indexOf('\t', tab + 1);
+                    total = Long.parseLong(line.substring(tab + 1, end < 0 ? line.length() : end));
+                }
+                catch (NumberFormatException ex)
+                {
+                    continue; // Ignore malformed totals; acts as if region had no total
+                }
+
+                synchronized (totals)
+                {
+                    totals.set(line.substring(0, tab), 0, total);
+                }
+            }
+        }
+    }
+}
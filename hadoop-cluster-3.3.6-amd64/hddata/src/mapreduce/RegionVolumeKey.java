@@ -0,0 +1,173 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package mapreduce;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Job 3 composite key (secondary sort):
+ * - Natural part = region (used by partitioner and grouping comparator)
+ * - Secondary part = sumVol (long), sorted in descending order
+ * - Serialized as Text (vint length + UTF-8 bytes) followed by the long; the registered
+ *   {@link Comparator} sorts on these bytes without deserializing the keys
+ */
+public class RegionVolumeKey implements WritableComparable<RegionVolumeKey>
+{
+    static
+    {
+        WritableComparator.define(RegionVolumeKey.class, new Comparator());
+    }
+
+    private final Text region = new Text();
+    private long sumVol;
+
+    /**
+     * Sets both parts of the key, reusing the internal buffers.
+     *
+     * @param region region name
+     * @param sumVol total volume of the model in the region
+     */
+    public void set(String region, long sumVol)
+    {
+        this.region.set(region);
+        this.sumVol = sumVol;
+    }
+
+    public Text getRegion()
+    {
+        return region;
+    }
+
+    public long getSumVol()
+    {
+        return sumVol;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException
+    {
+        region.write(out);
+        out.writeLong(sumVol);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException
+    {
+        region.readFields(in);
+        sumVol = in.readLong();
+    }
+
+    /**
+     * Orders by region ascending, then by sumVol descending.
+     *
+     * @param o other key
+     * @return comparison result
+     */
+    @Override
+    public int compareTo(RegionVolumeKey o)
+    {
+        int c = region.compareTo(o.region);
+        if (c != 0)
+            return c;
+
+        return Long.compare(o.sumVol, sumVol);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return region.hashCode() * 31 + Long.hashCode(sumVol);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof RegionVolumeKey))
+            return false;
+
+        RegionVolumeKey k = (RegionVolumeKey) o;
+        return sumVol == k.sumVol && region.equals(k.region);
+    }
+
+    @Override
+    public String toString()
+    {
+        return region + "\t" + sumVol;
+    }
+
+    /**
+     * Raw comparator with the same order as {@link #compareTo(RegionVolumeKey)}:
+     * region bytes ascending (as {@link Text}), then sumVol descending.
+     */
+    public static class Comparator extends WritableComparator
+    {
+        public Comparator()
+        {
+            super(RegionVolumeKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2)
+        {
+            int c = compareRegions(b1, s1, b2, s2);
+            if (c != 0)
+                return c;
+
+            return Long.compare(readLong(b2, s2 + regionSize(b2, s2)), readLong(b1, s1 + regionSize(b1, s1)));
+        }
+
+        /**
+         * Compares the serialized regions at the start of two keys.
+         *
+         * @param b1    first buffer
+         * @param s1    start of the first key
+         * @param b2    second buffer
+         * @param s2    start of the second key
+         * @return comparison result on region
+         */
+        static int compareRegions(byte[] b1, int s1, byte[] b2, int s2)
+        {
+            int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+            int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+            return compareBytes(b1, s1 + n1, regionSize(b1, s1) - n1, b2, s2 + n2, regionSize(b2, s2) - n2);
+        }
+
+        /**
+         * Size in bytes of the serialized region (vint length prefix included).
+         *
+         * @param b     buffer
+         * @param s     start of the key
+         * @return size of the region part
+         */
+        static int regionSize(byte[] b, int s)
+        {
+            try
+            {
+                return WritableUtils.decodeVIntSize(b[s]) + readVInt(b, s);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalArgumentException("Corrupted RegionVolumeKey", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2025 Emanuele Relmi (https://github.com/Kirito-Emo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package mapreduce;
+
+import common.SplitSampler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sampling-mode sums of one Job 1 key, kept apart per stratum of input splits (used by {@link Combiner1}, {@link Reducer1}):
+ * - Values: "count|sumVolume|sumPrice|highCount|sumVolumeSq|n|N|stratum" (see {@link Mapper1})
+ * - {@link #partials()} gives one value per stratum again (combiner), {@link #estimate()} expands them
+ *   into the estimated totals of the whole input (reducer)
+ */
+class StratumSums
+{
+    static final int FIELDS = 8;
+
+    private final Map<String, double[]> byTag = new TreeMap<>(); // "n|N|stratum" -> count, volume, price, high, volumeSq
+
+    /**
+     * Adds one value.
+     *
+     * @param p value split on "|" into {@link #FIELDS} components (the stratum may contain "|")
+     */
+    void add(String[] p)
+    {
+        double[] acc = byTag.computeIfAbsent(p[5] + "|" + p[6] + "|" + p[7], t -> new double[5]);
+        for (int i = 0; i < 5; i++)
+            acc[i] += safeDouble(p[i]);
+    }
+
+    boolean isEmpty()
+    {
+        return byTag.isEmpty();
+    }
+
+    /**
+     * @return one value per stratum, in the format of {@link #add}
+     */
+    List<String> partials()
+    {
+        List<String> out = new ArrayList<>(byTag.size());
+        for (Map.Entry<String, double[]> e : byTag.entrySet())
+        {
+            double[] a = e.getValue();
+            out.add((long) a[0] + "|" + (long) a[1] + "|" + (long) a[2] + "|" + (long) a[3] + "|" + a[4] + "|" + e.getKey());
+        }
+        return out;
+    }
+
+    /**
+     * Stratified expansion estimate (see {@link SplitSampler}).
+     *
+     * @return "count|sumVolume|sumPrice|highCount|volumeVariance|degreesOfFreedom", the sums scaled to the whole input
+     */
+    String estimate()
+    {
+        double c = 0, vol = 0, prc = 0, hi = 0, var = 0, satt = 0;
+        for (Map.Entry<String, double[]> e : byTag.entrySet())
+        {
+            double[] a = e.getValue();
+            double w = SplitSampler.weight(e.getKey());
+            c   += w * a[0];
+            vol += w * a[1];
+            prc += w * a[2];
+            hi  += w * a[3];
+            double v = SplitSampler.variance(e.getKey(), a[1], a[4]);
+            var  += v;
+            satt += SplitSampler.satterthwaite(e.getKey(), v);
+        }
+        return Math.round(c) + "|" + Math.round(vol) + "|" + Math.round(prc) + "|" + Math.round(hi) + "|" + var
+                + "|" + SplitSampler.degreesOfFreedom(var, satt);
+    }
+
+    /**
+     * Parses a string as double with fallback to 0.
+     *
+     * @param s string to parse
+     * @return double value or 0 if parsing fails
+     */
+    private static double safeDouble(String s)
+    {
+        try
+        {
+            return Double.parseDouble(s);
+        }
+        catch(Exception e)
+        {
+            return 0;
+        }
+    }
+}
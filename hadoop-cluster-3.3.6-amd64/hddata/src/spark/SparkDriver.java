@@ -15,8 +15,26 @@
  */
 package spark;
 
+import common.ResultCache;
+import common.SampledCombineTextInputFormat;
+import common.SampledTextInputFormat;
+import common.SplitSampler;
+import common.StratifiedSplit;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.*;
 import org.apache.spark.api.java.function.*;
@@ -33,14 +51,29 @@ import scala.Tuple2;
  * 3) map to (ageGroup, (model, totalVol))
  * 4) reduceByKey keep max by totalVol
  * 5) saveAsTextFile
+ *
+ * The run is skipped when outputDir already holds the result for the same input (see {@link ResultCache});
+ * disable with --conf spark.bmw.result.cache.enabled=false.
+ *
+ * Many small input files: --conf spark.bmw.input.coalesce.bytes=N coalesces the one-per-file
+ * textFile partitions into partitions of about N bytes (no shuffle, locality preserved).
+ *
+ * Sampling mode (--conf spark.bmw.sample.fraction=f, f < 1): the input is read through {@link SampledTextInputFormat}
+ * (or {@link SampledCombineTextInputFormat} with coalescing), which draws whole input splits per stratum (folder of
+ * the input files) exactly like the MapReduce job; undrawn splits are never read. The split size is set with
+ * --conf spark.hadoop.mapreduce.input.fileinputformat.split.maxsize=N. Each line becomes
+ * "ageGroup \t model \t estimatedVolume \t volHalfWidth \t confident|provisional"
+ * (stratified estimate, see {@link SplitSampler}; the winner is "confident" when its interval does not overlap the runner-up's).
  */
 public class SparkDriver
 {
+    private static final String SPLIT_MAX = "mapreduce.input.fileinputformat.split.maxsize";
+
     /**
      * Entry point for Spark job.
      * @param args  inputPath outputDir
      */
-    public static void main(String[] args)
+    public static void main(String[] args) throws Exception
     {
         if (args.length < 2)
         {
@@ -54,87 +87,312 @@ public class SparkDriver
         SparkConf conf = new SparkConf().setAppName("BMW AgeGroup Top Model");
         JavaSparkContext sc = new JavaSparkContext(conf);
 
-        // Read all lines from CSV
-        JavaRDD<String> lines = sc.textFile(inputPath);
+        // Result cache on the Hadoop filesystem holding the output
+        Configuration hconf = new Configuration(sc.hadoopConfiguration());
+        hconf.setBoolean(ResultCache.ENABLED, conf.getBoolean("spark.bmw.result.cache.enabled", true));
+        ResultCache cache = new ResultCache(hconf);
+        cache.checkOutputs(new Path(outputDir));
 
-        // Filter header and blank lines
-        JavaRDD<String> data = lines.filter(s -> {
-            if (s == null)
-                return false;
+        double fraction = conf.getDouble("spark.bmw.sample.fraction", 1.0);
+        long seed = conf.getLong("spark.bmw.sample.seed", 42L);
+        double z = conf.getDouble("spark.bmw.sample.confidence.z", 1.96);
+        if (fraction <= 0.0 || fraction > 1.0)
+        {
+            System.err.println("spark.bmw.sample.fraction must be in (0, 1]");
+            System.exit(1);
+        }
 
-            String t = s.trim();
-            if (t.isEmpty())
-                return false;
+        Map<String,String> params = new HashMap<>();
+        params.put("sample.fraction", String.valueOf(fraction));
+        if (fraction < 1.0)
+        {
+            params.put("sample.seed", String.valueOf(seed));
+            params.put("sample.confidence.z", String.valueOf(z));
+            // The input splits are the sampling units, so their size is part of the fingerprint
+            params.put("input.coalesce.bytes", conf.get("spark.bmw.input.coalesce.bytes", "0"));
+            params.put(SPLIT_MAX, hconf.get(SPLIT_MAX, ""));
+        }
 
-            return !t.toLowerCase(Locale.ROOT).startsWith("model,");
-        });
+        String fp = cache.fingerprint("spark-agegroup", params, ResultCache.inputPaths(inputPath));
+        if (cache.isCached("Spark", new Path(outputDir), fp))
+        {
+            cache.logSummary();
+            sc.stop();
+            return;
+        }
+        long t0 = System.currentTimeMillis();
 
-        // Map -> Pair: key=(ageGroup, model), value=volume
-        JavaPairRDD<Tuple2<String, String>, Integer> pair = data.mapToPair(
-                new PairFunction<String, Tuple2<String, String>, Integer>()
+        long coalesceBytes = conf.getLong("spark.bmw.input.coalesce.bytes", 0L);
+
+        JavaRDD<String> out;
+        if (fraction < 1.0)
+        {
+            System.out.println("[sample] approximate run on ~" + (100.0 * fraction) + "% of the input splits");
+
+            // Sampling mode: the input format draws whole splits; with coalescing it packs small files first
+            Configuration sconf = new Configuration(hconf);
+            sconf.setDouble(SplitSampler.FRACTION, fraction);
+            sconf.setLong(SplitSampler.SEED, seed);
+
+            JavaPairRDD<LongWritable, Text> raw;
+            if (coalesceBytes > 0)
+            {
+                sconf.setLong(SPLIT_MAX, coalesceBytes);
+                sconf.set(SplitSampler.SIZE_PROPERTY, "spark.bmw.input.coalesce.bytes");
+                raw = sc.newAPIHadoopFile(inputPath, SampledCombineTextInputFormat.class, LongWritable.class, Text.class, sconf);
+            }
+            else
+            {
+                sconf.set(SplitSampler.SIZE_PROPERTY, "spark.hadoop." + SPLIT_MAX);
+                raw = sc.newAPIHadoopFile(inputPath, SampledTextInputFormat.class, LongWritable.class, Text.class, sconf);
+            }
+            out = sampledTopPerAge((JavaNewHadoopRDD<LongWritable, Text>) raw, z);
+        }
+        else
+        {
+            // Read all lines from CSV
+            JavaRDD<String> lines = sc.textFile(inputPath);
+
+            // Small-file mode: pack partitions up to the target size
+            if (coalesceBytes > 0)
+            {
+                long totalBytes = 0;
+                for (Path in : ResultCache.inputPaths(inputPath))
                 {
-                    @Override
-                    public Tuple2<Tuple2<String, String>, Integer> call(String s)
+                    FileSystem fs = in.getFileSystem(hconf);
+                    FileStatus[] matches = fs.globStatus(in);
+                    if (matches != null)
                     {
-                        // Splitting CSV by commas
-                        String[] f = s.split(",", -1);
+                        for (FileStatus st : matches)
+                            totalBytes += fs.getContentSummary(st.getPath()).getLength();
+                    }
+                }
 
-                        // Guard value
-                        if (f.length < 11)
-                            return new Tuple2<>(new Tuple2<>("invalid","invalid"), 0);
+                int target = (int) Math.max(1, (totalBytes + coalesceBytes - 1) / coalesceBytes);
+                if (target < lines.getNumPartitions())
+                    lines = lines.coalesce(target);
+            }
 
-                        String model = f[0].trim(); // Model
-                        String years = f[1].trim(); // Year
-                        String vols  = f[9].trim(); // Sales volume
+            // Filter header and blank lines
+            JavaRDD<String> data = lines.filter(SparkDriver::isData);
 
-                        int year = safeInt(years);
-                        int vol  = safeInt(vols);
+            // Map -> Pair: key=(ageGroup, model), value=volume
+            JavaPairRDD<Tuple2<String, String>, Integer> pair = data.mapToPair(new RowParser());
 
-                        String ageGroup = bucketYear(year);
-                        return new Tuple2<>(new Tuple2<>(ageGroup, model), vol);
-                    }
+            // Reduce volumes per (ageGroup, model)
+            JavaPairRDD<Tuple2<String,String>, Integer> reduced = pair.reduceByKey((a, b) -> a + b);
 
-                    private int safeInt(String x)
-                    {
-                        try
-                        {
-                            return Integer.parseInt(x);
-                        }
-                        catch(Exception e)
-                        {
-                            return 0;
-                        }
-                    }
+            // Map to (ageGroup, (model, totalVol))
+            JavaPairRDD<String, Tuple2<String,Integer>> byAge = reduced.mapToPair(t -> new Tuple2<>(t._1._1, new Tuple2<>(t._1._2, t._2)));
 
-                    // Year bucketing
-                    private String bucketYear(int year)
-                    {
-                        if (year <= 2014)
-                            return "age<=2014";
+            // For each ageGroup, keep the max by totalVol
+            JavaPairRDD<String, Tuple2<String,Integer>> topPerAge = byAge.reduceByKey((a, b) -> (a._2 >= b._2) ? a : b);
 
-                        if (year <= 2018)
-                            return "2015_2018";
+            // Save as text with the format "ageGroup \t model \t totalVolume"
+            out = topPerAge.map(t -> t._1 + "\t" + t._2._1 + "\t" + t._2._2);
+        }
 
-                        if (year <= 2021)
-                            return "2019_2021";
+        Path staged = cache.staging(new Path(outputDir));
+        out.saveAsTextFile(staged.toString());
+        cache.commit(staged, new Path(outputDir), fp, System.currentTimeMillis() - t0);
+        cache.logSummary();
+        sc.stop();
+    }
 
-                        return ">=2022";
-                    }
-                });
+    /**
+     * Header and blank lines filter.
+     */
+    private static boolean isData(String s)
+    {
+        if (s == null)
+            return false;
 
-        // Reduce volumes per (ageGroup, model)
-        JavaPairRDD<Tuple2<String,String>, Integer> reduced = pair.reduceByKey((a, b) -> a + b);
+        String t = s.trim();
+        if (t.isEmpty())
+            return false;
 
-        // Map to (ageGroup, (model, totalVol))
-        JavaPairRDD<String, Tuple2<String,Integer>> byAge = reduced.mapToPair(t -> new Tuple2<>(t._1._1, new Tuple2<>(t._1._2, t._2)));
+        return !t.toLowerCase(Locale.ROOT).startsWith("model,");
+    }
 
-        // For each ageGroup, keep the max by totalVol
-        JavaPairRDD<String, Tuple2<String,Integer>> topPerAge = byAge.reduceByKey((a, b) -> (a._2 >= b._2) ? a : b);
+    /**
+     * CSV row -> ((ageGroup, model), volume).
+     */
+    private static class RowParser implements PairFunction<String, Tuple2<String, String>, Integer>
+    {
+        private static final long serialVersionUID = 1L;
 
-        // Save as text with the format "ageGroup \t model \t totalVolume"
-        JavaRDD<String> out = topPerAge.map(t -> t._1 + "\t" + t._2._1 + "\t" + t._2._2);
+        @Override
+        public Tuple2<Tuple2<String, String>, Integer> call(String s)
+        {
+            // Splitting CSV by commas
+            String[] f = s.split(",", -1);
 
-        out.saveAsTextFile(outputDir);
-        sc.stop();
+            // Guard value
+            if (f.length < 11)
+                return new Tuple2<>(new Tuple2<>("invalid","invalid"), 0);
+
+            String model = f[0].trim(); // Model
+            String years = f[1].trim(); // Year
+            String vols  = f[9].trim(); // Sales volume
+
+            int year = safeInt(years);
+            int vol  = safeInt(vols);
+
+            String ageGroup = bucketYear(year);
+            return new Tuple2<>(new Tuple2<>(ageGroup, model), vol);
+        }
+
+        private int safeInt(String x)
+        {
+            try
+            {
+                return Integer.parseInt(x);
+            }
+            catch(Exception e)
+            {
+                return 0;
+            }
+        }
+
+        // Year bucketing
+        private String bucketYear(int year)
+        {
+            if (year <= 2014)
+                return "age<=2014";
+
+            if (year <= 2018)
+                return "2015_2018";
+
+            if (year <= 2021)
+                return "2019_2021";
+
+            return ">=2022";
+        }
+    }
+
+    /**
+     * Sampling mode: estimates the best-selling model per age group from the drawn splits.
+     * Each split is summed per (ageGroup, model) and tagged with its stratum; the stratified expansion estimator
+     * of {@link SplitSampler} then gives the estimated total volume, its variance and degrees of freedom.
+     *
+     * @param raw   (offset, line) records of the drawn splits
+     * @param z     z-score of the confidence interval
+     * @return lines "ageGroup \t model \t estimatedVolume \t volHalfWidth \t confident|provisional"
+     */
+    private static JavaRDD<String> sampledTopPerAge(JavaNewHadoopRDD<LongWritable, Text> raw, double z)
+    {
+        // ((ageGroup, model), stratum tag) -> (sum of split volumes, sum of squared split volumes)
+        JavaPairRDD<Tuple2<Tuple2<String,String>, String>, Tuple2<Long,Double>> sums = raw
+                .mapPartitionsWithInputSplit(SparkDriver::splitTotals, true)
+                .mapToPair(t -> t)
+                .reduceByKey((a, b) -> new Tuple2<>(a._1 + b._1, a._2 + b._2));
+
+        // (ageGroup, model) -> {estimated volume, variance, Satterthwaite term}, summed over the strata
+        JavaPairRDD<Tuple2<String,String>, double[]> estimates = sums
+                .mapToPair(t -> {
+                    String tag = t._1._2;
+                    double variance = SplitSampler.variance(tag, t._2._1, t._2._2);
+                    return new Tuple2<>(t._1._1, new double[] { SplitSampler.weight(tag) * t._2._1, variance,
+                            SplitSampler.satterthwaite(tag, variance) });
+                })
+                .reduceByKey((a, b) -> new double[] { a[0] + b[0], a[1] + b[1], a[2] + b[2] });
+
+        // For each ageGroup, keep the best two models: the winner and the runner-up to compare against
+        JavaPairRDD<String, Estimate[]> top2 = estimates
+                .mapToPair(t -> new Tuple2<>(t._1._1, new Estimate[] {
+                        new Estimate(t._1._2, t._2[0], t._2[1], SplitSampler.degreesOfFreedom(t._2[1], t._2[2])), null }))
+                .reduceByKey(SparkDriver::top2);
+
+        return top2.map(t -> {
+            Estimate best = t._2[0];
+            Estimate second = t._2[1];
+            double hw = best.halfWidth(z);
+            boolean confident = (second == null) || (best.est - hw > second.est + second.halfWidth(z));
+
+            return t._1 + "\t" + best.model + "\t" + Math.round(best.est) + "\t"
+                    + String.format(Locale.US, "%.0f", hw) + "\t" + (confident ? "confident" : "provisional");
+        });
+    }
+
+    /**
+     * Totals of one drawn split: (((ageGroup, model), stratum tag), (volume, volume^2)) for each key of the split.
+     */
+    private static Iterator<Tuple2<Tuple2<Tuple2<String,String>, String>, Tuple2<Long,Double>>> splitTotals(
+            InputSplit split, Iterator<Tuple2<LongWritable, Text>> rows)
+    {
+        String tag = SplitSampler.tag((StratifiedSplit) split);
+        RowParser parser = new RowParser();
+        Map<Tuple2<String,String>, long[]> totals = new HashMap<>();
+        while (rows.hasNext())
+        {
+            String s = rows.next()._2.toString();
+            if (!isData(s))
+                continue;
+
+            Tuple2<Tuple2<String,String>, Integer> r = parser.call(s);
+            totals.computeIfAbsent(r._1, k -> new long[1])[0] += r._2;
+        }
+
+        List<Tuple2<Tuple2<Tuple2<String,String>, String>, Tuple2<Long,Double>>> out = new ArrayList<>(totals.size());
+        for (Map.Entry<Tuple2<String,String>, long[]> e : totals.entrySet())
+        {
+            long v = e.getValue()[0];
+            out.add(new Tuple2<>(new Tuple2<>(e.getKey(), tag), new Tuple2<>(v, (double) v * v))); // squares of long totals overflow a long
+        }
+        return out.iterator();
+    }
+
+    /**
+     * Merges two "best two" arrays, keeping the two largest estimates (ties keep {@code a}'s entries first).
+     */
+    private static Estimate[] top2(Estimate[] a, Estimate[] b)
+    {
+        Estimate[] out = new Estimate[2];
+        int i = 0, j = 0;
+        for (int k = 0; k < 2; k++)
+        {
+            Estimate x = (i < 2) ? a[i] : null;
+            Estimate y = (j < 2) ? b[j] : null;
+            if (x == null && y == null)
+                break;
+
+            if (y == null || (x != null && x.est >= y.est))
+            {
+                out[k] = x;
+                i++;
+            }
+            else
+            {
+                out[k] = y;
+                j++;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Estimated volume of one (ageGroup, model).
+     */
+    private static class Estimate implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        final String model;
+        final double est;
+        final double variance;
+        final double df;
+
+        Estimate(String model, double est, double variance, double df)
+        {
+            this.model = model;
+            this.est = est;
+            this.variance = variance;
+            this.df = df;
+        }
+
+        double halfWidth(double z)
+        {
+            return SplitSampler.halfWidth(variance, df, z);
+        }
     }
-}
\ No newline at end of file
+}